@@ -0,0 +1,117 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Completion handle of a message received by the first instance.<br><br>
+ *
+ * A message is complete once either <code>complete()</code> or <code>fail()</code> has been invoked; later invocations are ignored.
+ * The handle may be completed from any thread, which allows processing to continue without holding a connection thread.
+ * The message buffer and the connection of the subsequent instance are held until the message is complete.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class Acknowledgement {
+
+	// instance which received the message
+	private final Unique4j unique;
+
+	// connection to the subsequent instance, or null once it is closed
+	SocketChannel socket;
+
+	// codec holding the message bytes, or null for replayed messages
+	final MessageCodec codec;
+
+	// message bytes reserved from the memory budget
+	final int permits;
+
+	// sequence number of the journal entry, or -1 if not journaled
+	long entry = -1;
+
+	// connection stays open after the status has been reported
+	boolean keepAlive;
+
+	// completed or not
+	private final AtomicBoolean done = new AtomicBoolean();
+
+	// status has been reported and everything has been released
+	private boolean finished;
+
+	Acknowledgement(Unique4j unique, SocketChannel socket, MessageCodec codec, int permits) {
+		this.unique = unique;
+		this.socket = socket;
+		this.codec = codec;
+		this.permits = permits;
+	}
+
+	/**
+	 * Mark the message as successfully processed.<br>
+	 * In <code>AFTER_PROCESSING</code> delivery mode the subsequent instance receives the status <code>DELIVERED</code>.
+	 */
+	public void complete() {
+		finish(DeliveryStatus.DELIVERED);
+	}
+
+	/**
+	 * Mark the message as failed.<br>
+	 * In <code>AFTER_PROCESSING</code> delivery mode the subsequent instance receives the status <code>FAILED</code>.
+	 * In durable mode the message is delivered again by the next first instance.
+	 */
+	public void fail() {
+		finish(DeliveryStatus.FAILED);
+	}
+
+	/**
+	 * Check whether the message is complete.
+	 *
+	 * @return true if <code>complete()</code> or <code>fail()</code> has been invoked, false otherwise
+	 */
+	public boolean isDone() {
+		return done.get();
+	}
+
+	/**
+	 * Wait until the message is complete and its status has been reported.
+	 *
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	synchronized void await() throws InterruptedException {
+		while (!finished) {
+			wait();
+		}
+	}
+
+	// finish exactly once
+	private void finish(DeliveryStatus status) {
+		if (done.compareAndSet(false, true)) {
+			try {
+				unique.finishMessage(this, status);
+			} finally {
+				synchronized (this) {
+					finished = true;
+					notifyAll();
+				}
+			}
+		}
+	}
+
+}
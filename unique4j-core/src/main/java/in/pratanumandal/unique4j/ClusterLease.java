@@ -0,0 +1,424 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.security.SecureRandom;
+import java.util.UUID;
+
+/**
+ * Lease file electing the leader of a cluster of hosts which share a directory.<br><br>
+ *
+ * File locks are unreliable on network file systems, so the leader is elected through the content of the lease file instead.
+ * The lease names its holder, the address on which the leader accepts messages, a fencing token, a secret and an expiry time.
+ * It is always replaced by an atomic rename of a complete file, so readers never see a partial lease.
+ * The leader renews the lease well before it expires. Candidates take over an expired lease with the next fencing token.
+ * Before writing the lease, a candidate claims its token by exclusively creating a claim file named after the token,
+ * so competing candidates which have seen the same lease cannot both write it.
+ * A lease which has expired within the last settle time of a quarter of the lease duration may still be renewed by its leader
+ * or be stale file contents served by the file system, so candidates wait for the settle time and read it again before taking it over.
+ * The lease duration must therefore be at least four times the attribute cache timeout of a network file system.<br><br>
+ *
+ * The fencing token increases with every change of leadership. A leader which has stalled past its expiry
+ * can be told apart from its successor by passing the token along with every write to shared resources.
+ * The secret is drawn anew by every leader. Instances present it along with the fencing token in every message to the leader,
+ * so only hosts which can read the shared directory are able to send messages.
+ * Expiry times are wall clock times, so the clocks of the hosts must be synchronized to well within the lease duration.<br><br>
+ *
+ * Layout: one line each for fencing token, holder, host, port, secret and expiry time in milliseconds since the epoch.
+ * Claim files are empty. Every new leader removes the claims of earlier tokens.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class ClusterLease {
+
+	// fraction of the lease duration to wait for competing candidates before checking the outcome of an election
+	private static final int SETTLE_DIVISOR = 4;
+
+	// separates the name of the lease file from the fencing token in the name of a claim file
+	private static final String CLAIM_INFIX = ".claim-";
+
+	// source of lease secrets
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	// lease file
+	private final File file;
+
+	// lease duration in milliseconds
+	private final long duration;
+
+	// identifies this candidate
+	private final String holder = UUID.randomUUID().toString();
+
+	// fencing token of the held lease, -1 if not held
+	private long token = -1;
+
+	// advertised address of the held lease
+	private String host;
+	private int port;
+
+	// secret of the held lease
+	private long secret;
+
+	// expiry time of the held lease as last written in milliseconds since the epoch
+	private long expiry;
+
+	/**
+	 * Content of a lease file.
+	 */
+	static final class Lease {
+
+		// fencing token
+		final long token;
+
+		// identifies the holder
+		final String holder;
+
+		// advertised address of the leader
+		final String host;
+		final int port;
+
+		// secret presented to the leader along with the fencing token
+		final long secret;
+
+		// expiry time in milliseconds since the epoch
+		final long expiry;
+
+		Lease(long token, String holder, String host, int port, long secret, long expiry) {
+			this.token = token;
+			this.holder = holder;
+			this.host = host;
+			this.port = port;
+			this.secret = secret;
+			this.expiry = expiry;
+		}
+
+		/**
+		 * Check whether the lease is still held by its leader.
+		 *
+		 * @return true if the lease has not expired
+		 */
+		boolean isLive() {
+			return System.currentTimeMillis() < expiry;
+		}
+
+	}
+
+	/**
+	 * Create a lease for a lease file.
+	 *
+	 * @param file lease file
+	 * @param duration lease duration in milliseconds
+	 */
+	ClusterLease(File file, long duration) {
+		this.file = file;
+		this.duration = duration;
+	}
+
+	/**
+	 * Get the interval at which the leader renews the lease.
+	 *
+	 * @return interval in milliseconds
+	 */
+	long getRenewInterval() {
+		return Math.max(1, duration / 3);
+	}
+
+	/**
+	 * Get the time within which a live leader accepts a connection.
+	 *
+	 * @return connect timeout in milliseconds
+	 */
+	int getConnectTimeout() {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(1, duration / SETTLE_DIVISOR));
+	}
+
+	/**
+	 * Get the time after which an expired lease can no longer be renewed by its leader or be served stale by the file system.
+	 *
+	 * @return settle time in milliseconds
+	 */
+	long getSettleTime() {
+		return Math.max(1, duration / SETTLE_DIVISOR);
+	}
+
+	/**
+	 * Get the expiry time of the held lease as last written.<br>
+	 * Once it has passed, another candidate may have taken the lease over even if the lease file could not be read.
+	 *
+	 * @return expiry time in milliseconds since the epoch
+	 */
+	synchronized long getExpiry() {
+		return expiry;
+	}
+
+	/**
+	 * Get the fencing token of the held lease.
+	 *
+	 * @return the fencing token, or -1 if the lease is not held
+	 */
+	synchronized long getToken() {
+		return token;
+	}
+
+	/**
+	 * Get the secret of the held lease.
+	 *
+	 * @return the secret, meaningless if the lease is not held
+	 */
+	synchronized long getSecret() {
+		return secret;
+	}
+
+	/**
+	 * Read the lease file.
+	 *
+	 * @return the lease, or null if there is no lease file or it is corrupted
+	 * @throws IOException if the lease file cannot be read
+	 */
+	Lease read() throws IOException {
+		BufferedReader br;
+		try {
+			br = new BufferedReader(new InputStreamReader(new FileInputStream(file), MessageCodec.CHARSET));
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+
+		try {
+			long token = Long.parseLong(br.readLine());
+			String holder = br.readLine();
+			String host = br.readLine();
+			int port = Integer.parseInt(br.readLine());
+			long secret = Long.parseLong(br.readLine());
+			long expiry = Long.parseLong(br.readLine());
+			return (holder == null || host == null) ? null : new Lease(token, holder, host, port, secret, expiry);
+		} catch (NumberFormatException e) {
+			return null;
+		} finally {
+			br.close();
+		}
+	}
+
+	/**
+	 * Try to become the leader, unless another candidate holds a live lease.
+	 *
+	 * @param host advertised host of this candidate
+	 * @param port advertised port of this candidate
+	 * @return true if this candidate holds the lease
+	 * @throws IOException if the lease file cannot be read or written
+	 * @throws InterruptedException if the thread is interrupted while waiting for the lease to settle
+	 */
+	synchronized boolean acquire(String host, int port) throws IOException, InterruptedException {
+		Lease current = read();
+		if (isHeldByOther(current)) {
+			return false;
+		}
+
+		// a missing or long expired lease is taken over at once
+		if (isSettling(current)) {
+			Thread.sleep(getSettleTime());
+			current = read();
+			if (isHeldByOther(current)) {
+				return false;
+			}
+		}
+
+		// take the lease over with the next fencing token
+		long token = (current == null) ? 1 : current.token + 1;
+		while (!claim(token)) {
+			// a competing candidate is taking the lease over
+			Thread.sleep(getSettleTime());
+			current = read();
+			if (isHeldByOther(current)) {
+				return false;
+			}
+
+			// the competing candidate has given up, skip its claim
+			token = Math.max(latestClaim(), (current == null) ? 0 : current.token) + 1;
+		}
+
+		long secret = RANDOM.nextLong();
+		long expiry = System.currentTimeMillis() + duration;
+		write(token, host, port, secret, expiry);
+		pruneClaims(token);
+
+		this.token = token;
+		this.host = host;
+		this.port = port;
+		this.secret = secret;
+		this.expiry = expiry;
+		return true;
+	}
+
+	/**
+	 * Extend the held lease.
+	 *
+	 * @return true if the lease is still held, false if another candidate has taken it over
+	 * @throws IOException if the lease file cannot be read or written
+	 */
+	synchronized boolean renew() throws IOException {
+		if (token == -1) {
+			return false;
+		}
+
+		Lease current = read();
+		if (current == null || !holder.equals(current.holder) || current.token != token) {
+			token = -1;
+			return false;
+		}
+
+		long expiry = System.currentTimeMillis() + duration;
+		write(token, host, port, secret, expiry);
+		this.expiry = expiry;
+		return true;
+	}
+
+	/**
+	 * Give up the held lease, keeping its fencing token for the next leader. Repeated calls have no effect.
+	 *
+	 * @throws IOException if the lease file cannot be read or written
+	 */
+	synchronized void release() throws IOException {
+		if (token == -1) {
+			return;
+		}
+
+		try {
+			// expire the lease unless another candidate has taken it over
+			Lease current = read();
+			if (current != null && holder.equals(current.holder) && current.token == token) {
+				write(token, host, port, secret, 0);
+			}
+		} finally {
+			// an unwritten lease expires by itself
+			token = -1;
+		}
+	}
+
+	// check whether a lease is live and held by another candidate
+	private boolean isHeldByOther(Lease current) {
+		return current != null && current.isLive() && !holder.equals(current.holder);
+	}
+
+	// check whether the lease may still be renewed by its leader, or the lease file is being replaced
+	private boolean isSettling(Lease current) {
+		if (current == null) {
+			// a corrupted lease file is waited for like a recently expired lease
+			return file.exists();
+		}
+		return System.currentTimeMillis() <= current.expiry + getSettleTime();
+	}
+
+	// claim a fencing token exclusively, false if it or a later token has been claimed
+	private boolean claim(long token) throws IOException {
+		File claim = claimFile(token);
+		if (!claim.createNewFile()) {
+			return false;
+		}
+
+		// a candidate with an outdated view of the lease may claim a token which has been superseded
+		if (latestClaim() > token) {
+			claim.delete();
+			return false;
+		}
+		return true;
+	}
+
+	// get the latest claimed fencing token, 0 if there is no claim
+	private long latestClaim() throws IOException {
+		long latest = 0;
+		for (long claimed : claims()) {
+			latest = Math.max(latest, claimed);
+		}
+		return latest;
+	}
+
+	// remove the claims of tokens before a held token
+	private void pruneClaims(long token) throws IOException {
+		for (long claimed : claims()) {
+			if (claimed < token) {
+				claimFile(claimed).delete();
+			}
+		}
+	}
+
+	// list the claimed fencing tokens
+	private long[] claims() throws IOException {
+		String prefix = file.getName() + CLAIM_INFIX;
+		String[] names = file.getAbsoluteFile().getParentFile().list();
+		if (names == null) {
+			throw new IOException("Failed to list claims of lease file " + file);
+		}
+
+		long[] claims = new long[names.length];
+		int count = 0;
+		for (String name : names) {
+			if (!name.startsWith(prefix)) {
+				continue;
+			}
+
+			try {
+				claims[count] = Long.parseLong(name.substring(prefix.length()));
+				count++;
+			} catch (NumberFormatException e) {
+				// not a claim file
+			}
+		}
+
+		long[] claimed = new long[count];
+		System.arraycopy(claims, 0, claimed, 0, count);
+		return claimed;
+	}
+
+	// claim file of a fencing token
+	private File claimFile(long token) {
+		return new File(file.getPath() + CLAIM_INFIX + token);
+	}
+
+	// replace the lease file with a complete lease
+	private void write(long token, String host, int port, long secret, long expiry) throws IOException {
+		File temp = new File(file.getPath() + "." + holder);
+
+		String content = token + "\n" + holder + "\n" + host + "\n" + port + "\n" + secret + "\n" + expiry + "\n";
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(content.getBytes(MessageCodec.CHARSET));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+
+		// rename replaces the lease file atomically on POSIX file systems
+		if (!temp.renameTo(file)) {
+			// other file systems refuse to replace an existing file
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Failed to replace lease file " + file);
+			}
+		}
+	}
+
+}
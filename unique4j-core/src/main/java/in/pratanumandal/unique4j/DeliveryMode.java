@@ -0,0 +1,40 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+/**
+ * Mode used to acknowledge messages received by the first instance.
+ * 
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public enum DeliveryMode {
+	
+	/**
+	 * Acknowledge a message as soon as it is received, before it is processed.
+	 * A message may be lost if the first instance fails while processing it.
+	 */
+	ON_RECEIPT,
+	
+	/**
+	 * Acknowledge a message only after it has been processed.
+	 * The subsequent instance waits for the outcome and receives it as its delivery status.
+	 */
+	AFTER_PROCESSING
+
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+/**
+ * Status of a message sent from a subsequent instance to the first instance.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public enum DeliveryStatus {
+
+	/**
+	 * Message has been received by the first instance.
+	 */
+	ACCEPTED(0),
+
+	/**
+	 * Message has been rejected as it exceeds the maximum message size of the first instance.
+	 */
+	REJECTED_TOO_LARGE(1),
+
+	/**
+	 * Message has been rejected as the first instance has no memory budget left for it.
+	 */
+	REJECTED_BUSY(2),
+
+	/**
+	 * Message has been processed by the first instance.
+	 */
+	DELIVERED(3),
+
+	/**
+	 * Message has been received but its processing failed in the first instance.
+	 */
+	FAILED(4),
+
+	/**
+	 * Request has been rejected as the sender is not authorized by the first instance.
+	 */
+	REJECTED_UNAUTHORIZED(5);
+
+	// status code used on the wire
+	private final int code;
+
+	private DeliveryStatus(int code) {
+		this.code = code;
+	}
+
+	/**
+	 * Get the status code used on the wire.
+	 *
+	 * @return the status code
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * Check whether the message has been received or processed by the first instance.
+	 *
+	 * @return true if the message has neither been rejected nor failed, false otherwise
+	 */
+	public boolean isSuccessful() {
+		return this == ACCEPTED || this == DELIVERED;
+	}
+
+	/**
+	 * Get the status for a status code used on the wire.
+	 *
+	 * @param code the status code
+	 * @return the status, or null if the code is unknown
+	 */
+	public static DeliveryStatus valueOf(int code) {
+		for (DeliveryStatus status : values()) {
+			if (status.code == code) {
+				return status;
+			}
+		}
+		return null;
+	}
+
+}
@@ -0,0 +1,422 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileLock;
+import java.nio.channels.FileLockInterruptionException;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock strategy using a lock file per name in a lock directory. This is the default lock strategy.<br><br>
+ *
+ * The first instance holds an exclusive lock on a region of the lock file beyond its content and writes its endpoint into the file.
+ * The operating system drops the lock when the process dies, so a crashed first instance never blocks the election.
+ * Instances waiting for the lock block in the kernel until the holder releases it.
+ * While elected, the first instance also holds a lock on a liveness byte, which status probes test instead of the election lock.
+ * Each lock file is opened once per JVM, as closing any descriptor of a lock file would drop the lock of a first instance in the same process.
+ * The first instance restricts its lock file to its owner where the file system supports it,
+ * as the endpoint carries the secret a successor needs to take over.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public class FileLockStrategy implements LockStrategy {
+
+	// notified whenever a lock of this JVM is released
+	private static final Object RELEASE_MONITOR = new Object();
+
+	// serializes status probes in this JVM, which would otherwise overlap each other
+	private static final Object PROBE_MONITOR = new Object();
+
+	// number of locks released in this JVM
+	private static long releaseCount;
+
+	// default timer aborting blocked lock attempts, created on first use
+	private static Timer defaultTimer;
+
+	// maximum number of bytes of a published endpoint
+	private static final int MAX_ENDPOINT = 4096;
+
+	// directory holding the lock files
+	private final File directory;
+
+	// timer aborting blocked lock attempts, or null for the default timer
+	private final Timer timer;
+
+	/**
+	 * Create a lock strategy using lock files in the default lock directory.
+	 */
+	public FileLockStrategy() {
+		this(LockDirectories.getDefault());
+	}
+
+	/**
+	 * Create a lock strategy using lock files in a lock directory.
+	 *
+	 * @param directory lock directory
+	 */
+	public FileLockStrategy(File directory) {
+		this(directory, null);
+	}
+
+	/**
+	 * Create a lock strategy using lock files in a lock directory.<br>
+	 * Waiting for a lock blocks in the kernel, so a timer is needed to abort the wait once the timeout elapses.
+	 *
+	 * @param directory lock directory
+	 * @param timer timer aborting waits for a lock, null for a daemon timer shared by all file lock strategies
+	 */
+	public FileLockStrategy(File directory, Timer timer) {
+		this.directory = directory;
+		this.timer = timer;
+	}
+
+	/**
+	 * Get the lock directory.
+	 *
+	 * @return the lock directory
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Lock held on a lock file.
+	 */
+	private static final class FileElection implements LockStrategy.Lock {
+
+		// lock file shared by this JVM
+		private SharedFile file;
+
+		// election lock on the lock file
+		private FileLock lock;
+
+		// liveness lock on the lock file
+		private FileLock liveness;
+
+		FileElection(SharedFile file, FileLock lock, FileLock liveness) {
+			this.file = file;
+			this.lock = lock;
+			this.liveness = liveness;
+		}
+
+		@Override
+		public synchronized void publish(String endpoint) throws IOException {
+			if (lock == null) {
+				throw new IOException("Lock has been released");
+			}
+
+			// write through the shared file so that the lock is never dropped
+			file.write(endpoint.getBytes(MessageCodec.CHARSET));
+		}
+
+		@Override
+		public synchronized void release(boolean withdraw) throws IOException {
+			if (lock == null) {
+				return;
+			}
+
+			try {
+				try {
+					// clear the endpoint while still holding the lock
+					// the lock file is never deleted, as an instance which opened it before the delete could lock the orphaned file
+					if (withdraw) {
+						file.write(new byte[0]);
+					}
+				} finally {
+					try {
+						// no longer reported as running
+						file.unlock(liveness);
+					} finally {
+						file.unlock(lock);
+					}
+				}
+			} finally {
+				// the lock file is closed once no other lock of this JVM is held on it
+				file.release();
+				lock = null;
+				liveness = null;
+				file = null;
+
+				// wake up instances in this JVM waiting for the lock
+				synchronized (RELEASE_MONITOR) {
+					releaseCount++;
+					RELEASE_MONITOR.notifyAll();
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Abort of a lock blocked in the kernel once the timeout elapses.
+	 */
+	private static final class Abort extends TimerTask {
+
+		// lock file to close
+		private final SharedFile file;
+
+		// the wait has finished or has been aborted
+		private boolean done;
+
+		Abort(SharedFile file) {
+			this.file = file;
+		}
+
+		@Override
+		public synchronized void run() {
+			// a transient lock held through the file, such as a probe, only delays the abort
+			while (!done) {
+				if (file.abort()) {
+					done = true;
+				}
+				else {
+					try {
+						wait(1);
+					} catch (InterruptedException e) {
+						return;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Finish the wait, preventing a later abort.
+		 */
+		synchronized void finish() {
+			done = true;
+		}
+
+	}
+
+	@Override
+	public LockStrategy.Lock tryLock(String name) throws IOException {
+		File path = file(name);
+
+		while (true) {
+			SharedFile file = SharedFile.open(path);
+			FileLock lock = null;
+			try {
+				lock = file.tryLock(Protocol.ELECTION_POSITION, 1, false);
+			} catch (OverlappingFileLockException e) {
+				// held by another instance in this JVM
+			} catch (ClosedChannelException e) {
+				// closed by an aborted wait in this JVM, try again with a reopened file
+				continue;
+			} finally {
+				// the lock file stays open while another instance of this JVM uses it
+				if (lock == null) file.release();
+			}
+
+			return (lock == null) ? null : elect(path, file, lock);
+		}
+	}
+
+	@Override
+	public LockStrategy.Lock lock(String name, long timeoutNanos) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (true) {
+			// remember releases in this JVM before trying
+			long released;
+			synchronized (RELEASE_MONITOR) {
+				released = releaseCount;
+			}
+
+			// try to become the first instance
+			LockStrategy.Lock lock = tryLock(name);
+			if (lock != null) {
+				return lock;
+			}
+
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return null;
+			}
+
+			// block until the first instance releases its lock
+			lock = block(file(name), remaining, released);
+			if (lock != null) {
+				return lock;
+			}
+		}
+	}
+
+	@Override
+	public String resolve(String name) throws IOException {
+		while (true) {
+			SharedFile file = SharedFile.openExisting(file(name));
+			if (file == null) {
+				return null;
+			}
+
+			try {
+				// read through the shared file, closing another descriptor would drop the lock of a first instance in this JVM
+				return new String(file.read(MAX_ENDPOINT), MessageCodec.CHARSET);
+			} catch (IOException e) {
+				if (file.isOpen()) {
+					throw e;
+				}
+				// closed by an aborted wait in this JVM, try again with a reopened file
+			} finally {
+				file.release();
+			}
+		}
+	}
+
+	@Override
+	public boolean isLocked(String name) throws IOException {
+		while (true) {
+			SharedFile file = SharedFile.openExisting(file(name));
+			if (file == null) {
+				return false;
+			}
+
+			try {
+				synchronized (PROBE_MONITOR) {
+					// a shared lock cannot be obtained while the first instance holds its liveness lock
+					FileLock probe = file.tryLock(Protocol.LIVENESS_POSITION, 1, true);
+					if (probe == null) {
+						return true;
+					}
+
+					// lock file left behind by a crashed or released first instance
+					file.unlock(probe);
+					return false;
+				}
+			} catch (OverlappingFileLockException e) {
+				// held by a first instance in this JVM
+				return true;
+			} catch (ClosedChannelException e) {
+				// closed by an aborted wait in this JVM, try again with a reopened file
+			} finally {
+				file.release();
+			}
+		}
+	}
+
+	// get the lock file of a name
+	private File file(String name) {
+		return new File(directory, name + ".lock");
+	}
+
+	// wrap an election lock obtained on a lock file
+	private static LockStrategy.Lock elect(File path, SharedFile file, FileLock lock) throws IOException {
+		// only the owner may read the published handover token
+		path.setReadable(false, false);
+		path.setReadable(true, true);
+		path.setWritable(false, false);
+		path.setWritable(true, true);
+
+		// probes hold the liveness lock only for an instant, never block in the kernel as an interrupt would drop the election lock
+		FileLock liveness = null;
+		try {
+			while (liveness == null) {
+				try {
+					liveness = file.tryLock(Protocol.LIVENESS_POSITION, 1, false);
+				} catch (OverlappingFileLockException e) {
+					// probed in this JVM
+				}
+				if (liveness == null) {
+					LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+				}
+			}
+		} finally {
+			if (liveness == null) {
+				try {
+					file.unlock(lock);
+				} finally {
+					file.release();
+				}
+			}
+		}
+
+		return new FileElection(file, lock, liveness);
+	}
+
+	// block until the lock is obtained, the holder in this JVM releases it or the timeout elapses
+	private LockStrategy.Lock block(File path, long timeoutNanos, long released) throws IOException, InterruptedException {
+		SharedFile file = SharedFile.open(path);
+
+		// abort the blocking lock once the timeout elapses
+		Abort abort = new Abort(file);
+		getTimer().schedule(abort, Math.max(1, TimeUnit.NANOSECONDS.toMillis(timeoutNanos)));
+
+		FileLock lock = null;
+		try {
+			// block in the kernel until the lock holder releases it or dies, then keep the lock
+			lock = file.lock(Protocol.ELECTION_POSITION, 1, false);
+		} catch (OverlappingFileLockException e) {
+			// held by another instance in this JVM, which must never be aborted
+			abort.finish();
+			awaitRelease(timeoutNanos, released);
+		} catch (FileLockInterruptionException e) {
+			// interrupted while blocking in the kernel
+			Thread.interrupted();
+			throw new InterruptedException();
+		} catch (ClosedChannelException e) {
+			// timeout elapsed
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+		} finally {
+			// an obtained lock is counted, so a late abort is refused anyway
+			abort.cancel();
+			abort.finish();
+			if (lock == null) file.release();
+		}
+
+		return (lock == null) ? null : elect(path, file, lock);
+	}
+
+	// get the timer aborting waits for a lock
+	private Timer getTimer() {
+		if (timer != null) {
+			return timer;
+		}
+
+		synchronized (FileLockStrategy.class) {
+			if (defaultTimer == null) {
+				defaultTimer = new Timer("Unique4j-lock-timer", true);
+			}
+			return defaultTimer;
+		}
+	}
+
+	// block until an instance in this JVM releases its lock or the timeout elapses
+	private static void awaitRelease(long timeoutNanos, long released) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		synchronized (RELEASE_MONITOR) {
+			while (releaseCount == released) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return;
+				}
+
+				TimeUnit.NANOSECONDS.timedWait(RELEASE_MONITOR, remaining);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lock strategy electing first instances among the instances of one JVM which share the strategy object.<br><br>
+ *
+ * Locks and endpoints are kept in memory, so no files are created and instances in other processes are not seen.
+ * This is useful for tests, for running several isolated applications in one JVM,
+ * and as a baseline when benchmarking other lock strategies.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public class InProcessLockStrategy implements LockStrategy {
+
+	// held locks by name
+	private final Map<String, InProcessLock> locks = new HashMap<String, InProcessLock>();
+
+	// published endpoints by name
+	private final Map<String, String> endpoints = new HashMap<String, String>();
+
+	/**
+	 * Lock held in memory.
+	 */
+	private final class InProcessLock implements LockStrategy.Lock {
+
+		// name of the lock
+		private final String name;
+
+		InProcessLock(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public void publish(String endpoint) {
+			synchronized (InProcessLockStrategy.this) {
+				if (locks.get(name) == this) {
+					endpoints.put(name, endpoint);
+				}
+			}
+		}
+
+		@Override
+		public void release(boolean withdraw) {
+			synchronized (InProcessLockStrategy.this) {
+				if (locks.get(name) != this) {
+					return;
+				}
+
+				locks.remove(name);
+				if (withdraw) {
+					endpoints.remove(name);
+				}
+
+				// wake up instances waiting for the lock
+				InProcessLockStrategy.this.notifyAll();
+			}
+		}
+
+	}
+
+	@Override
+	public synchronized LockStrategy.Lock tryLock(String name) {
+		if (locks.containsKey(name)) {
+			return null;
+		}
+
+		InProcessLock lock = new InProcessLock(name);
+		locks.put(name, lock);
+		return lock;
+	}
+
+	@Override
+	public synchronized LockStrategy.Lock lock(String name, long timeoutNanos) throws InterruptedException {
+		long deadline = System.nanoTime() + timeoutNanos;
+		while (locks.containsKey(name)) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return null;
+			}
+
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+
+		return tryLock(name);
+	}
+
+	@Override
+	public synchronized boolean isLocked(String name) {
+		return locks.containsKey(name);
+	}
+
+	@Override
+	public synchronized String resolve(String name) {
+		return endpoints.get(name);
+	}
+
+}
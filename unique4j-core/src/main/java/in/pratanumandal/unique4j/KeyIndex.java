@@ -0,0 +1,300 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory-mapped index of the first instances of keyed singletons of one application.<br><br>
+ *
+ * Every key is hashed into an open addressing table of slots holding state, hash and port.
+ * Subsequent instances resolve the port of a key with a single lock free read of the mapped table.<br><br>
+ *
+ * Slots are claimed and freed while holding an exclusive lock on the header region, which serializes elections across processes,
+ * and the monitor of the index, which serializes elections within the JVM.
+ * The first instance of a key holds an exclusive lock on a region of its slot beyond the end of the file until it releases the key.
+ * The operating system drops this lock when the process dies, so the slot of a crashed first instance is taken over by the next election.<br><br>
+ *
+ * Layout: a header of magic and capacity, followed by slots of state, port and hash.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class KeyIndex {
+
+	// identifies an index file
+	private static final int MAGIC = 0x554A4B49;
+
+	// number of slots in a new index
+	private static final int CAPACITY = 4096;
+
+	// size of the header holding magic and capacity
+	private static final int HEADER_SIZE = 2 * Protocol.INT_BYTES;
+
+	// slot layout: state, port, hash
+	private static final int STATE_OFFSET = 0;
+	private static final int PORT_OFFSET = STATE_OFFSET + Protocol.INT_BYTES;
+	private static final int HASH_OFFSET = PORT_OFFSET + Protocol.INT_BYTES;
+	private static final int SLOT_SIZE = HASH_OFFSET + Protocol.LONG_BYTES;
+
+	// slot has never been used, ends a probe sequence
+	private static final int EMPTY = 0;
+
+	// slot holds the first instance of a key
+	private static final int ACTIVE = 1;
+
+	// slot has been freed, continues a probe sequence
+	private static final int TOMBSTONE = 2;
+
+	// position of the owner lock regions, beyond any slot data in the index file
+	private static final long OWNER_POSITION = Long.MAX_VALUE / 2;
+
+	// indexes opened by this JVM
+	private static final Map<File, KeyIndex> INDEXES = new HashMap<File, KeyIndex>();
+
+	// index file RAF object
+	private final RandomAccessFile raf;
+
+	// mapped index file
+	private final MappedByteBuffer buffer;
+
+	// number of slots
+	private final int capacity;
+
+	// owner locks of the keys whose first instance runs in this JVM
+	private final Map<Long, FileLock> owners = new HashMap<Long, FileLock>();
+
+	private KeyIndex(File file) throws IOException {
+		this.raf = new RandomAccessFile(file, "rw");
+
+		try {
+			FileLock lock = raf.getChannel().lock(0, HEADER_SIZE, false);
+			try {
+				// use the capacity of an existing index
+				int capacity = CAPACITY;
+				if (raf.length() >= HEADER_SIZE) {
+					raf.seek(0);
+					if (raf.readInt() == MAGIC) {
+						capacity = raf.readInt();
+					}
+				}
+				this.capacity = capacity;
+
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+
+				if (buffer.getInt(0) != MAGIC) {
+					// new or corrupted index
+					for (int i = HEADER_SIZE; i < buffer.capacity(); i++) {
+						buffer.put(i, (byte) 0);
+					}
+					buffer.putInt(Protocol.INT_BYTES, capacity);
+					buffer.putInt(0, MAGIC);
+				}
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open an index file, creating it if required.<br>
+	 * All callers in this JVM share one index per file so that owner locks are tracked in one place.
+	 *
+	 * @param file index file
+	 * @return the opened index
+	 * @throws IOException if the index cannot be opened
+	 */
+	static KeyIndex open(File file) throws IOException {
+		synchronized (INDEXES) {
+			KeyIndex index = INDEXES.get(file);
+			if (index == null) {
+				index = new KeyIndex(file);
+				INDEXES.put(file, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Resolve the port of the first instance of a key without locking.<br>
+	 * The port may belong to a first instance which has died; connecting to it fails in that case.
+	 *
+	 * @param hash hash of the key
+	 * @return the port, or -1 if the key has no first instance
+	 */
+	int lookup(long hash) {
+		int start = (int) ((hash & Long.MAX_VALUE) % capacity);
+		for (int i = 0; i < capacity; i++) {
+			int offset = offset((start + i) % capacity);
+
+			int state = buffer.getInt(offset + STATE_OFFSET);
+			if (state == EMPTY) {
+				break;
+			}
+
+			if (state == ACTIVE && buffer.getLong(offset + HASH_OFFSET) == hash) {
+				int port = buffer.getInt(offset + PORT_OFFSET);
+
+				// slot has not been replaced while reading
+				if (buffer.getInt(offset + STATE_OFFSET) == ACTIVE && buffer.getLong(offset + HASH_OFFSET) == hash) {
+					return port;
+				}
+				return -1;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Elect the first instance of a key.<br>
+	 * The slot of the key is claimed for the given port unless a live first instance holds it.
+	 *
+	 * @param hash hash of the key
+	 * @param port port of the candidate
+	 * @return -1 if the candidate has been elected, otherwise the port of the live first instance
+	 * @throws IOException if the index cannot be locked or is full
+	 */
+	synchronized int claim(long hash, int port) throws IOException {
+		// first instance of the key runs in this JVM
+		if (owners.containsKey(hash)) {
+			return lookup(hash);
+		}
+
+		FileLock election = raf.getChannel().lock(0, HEADER_SIZE, false);
+		try {
+			// find the slot of the key, or the first free slot of its probe sequence
+			int free = -1;
+			int start = (int) ((hash & Long.MAX_VALUE) % capacity);
+			for (int i = 0; i < capacity; i++) {
+				int slot = (start + i) % capacity;
+				int offset = offset(slot);
+				int state = buffer.getInt(offset + STATE_OFFSET);
+
+				if (state == ACTIVE && buffer.getLong(offset + HASH_OFFSET) == hash) {
+					// take over the slot of a dead first instance only
+					FileLock owner = raf.getChannel().tryLock(OWNER_POSITION + slot, 1, false);
+					if (owner == null) {
+						return buffer.getInt(offset + PORT_OFFSET);
+					}
+
+					buffer.putInt(offset + PORT_OFFSET, port);
+					owners.put(hash, owner);
+					return -1;
+				}
+
+				if (state != ACTIVE && free == -1) {
+					free = slot;
+				}
+
+				if (state == EMPTY) {
+					break;
+				}
+			}
+
+			FileLock owner;
+			if (free != -1) {
+				// freed slots are never locked as they are freed under the election lock
+				owner = raf.getChannel().tryLock(OWNER_POSITION + free, 1, false);
+				if (owner == null) {
+					throw new IOException("Key index is corrupted");
+				}
+			}
+			else {
+				// reclaim the slot of a dead first instance of another key
+				owner = null;
+				for (int slot = 0; slot < capacity && owner == null; slot++) {
+					try {
+						owner = raf.getChannel().tryLock(OWNER_POSITION + slot, 1, false);
+						free = slot;
+					} catch (OverlappingFileLockException e) {
+						// held by a first instance in this JVM
+					}
+				}
+
+				if (owner == null) {
+					throw new IOException("Key index is full");
+				}
+			}
+
+			// publish the slot once it is complete
+			int offset = offset(free);
+			buffer.putInt(offset + STATE_OFFSET, TOMBSTONE);
+			buffer.putLong(offset + HASH_OFFSET, hash);
+			buffer.putInt(offset + PORT_OFFSET, port);
+			buffer.putInt(offset + STATE_OFFSET, ACTIVE);
+
+			owners.put(hash, owner);
+			return -1;
+		} finally {
+			election.release();
+		}
+	}
+
+	/**
+	 * Free the slot of a key whose first instance runs in this JVM. Repeated calls have no effect.
+	 *
+	 * @param hash hash of the key
+	 * @throws IOException if the index cannot be locked
+	 */
+	synchronized void release(long hash) throws IOException {
+		FileLock owner = owners.remove(hash);
+		if (owner == null) {
+			return;
+		}
+
+		FileLock election = raf.getChannel().lock(0, HEADER_SIZE, false);
+		try {
+			int start = (int) ((hash & Long.MAX_VALUE) % capacity);
+			for (int i = 0; i < capacity; i++) {
+				int offset = offset((start + i) % capacity);
+				int state = buffer.getInt(offset + STATE_OFFSET);
+
+				if (state == EMPTY) {
+					break;
+				}
+
+				if (state == ACTIVE && buffer.getLong(offset + HASH_OFFSET) == hash) {
+					buffer.putInt(offset + STATE_OFFSET, TOMBSTONE);
+					break;
+				}
+			}
+
+			owner.release();
+		} finally {
+			election.release();
+		}
+	}
+
+	// get the offset of a slot
+	private static int offset(int slot) {
+		return HEADER_SIZE + slot * SLOT_SIZE;
+	}
+
+}
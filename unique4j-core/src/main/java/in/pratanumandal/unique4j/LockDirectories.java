@@ -0,0 +1,88 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+
+/**
+ * Lock directories holding the lock files and other shared files of Unique4j.<br><br>
+ *
+ * The default lock directory is the system temporary directory. It can be changed for all Unique4j classes of a JVM
+ * with the system property <code>unique4j.lockDir</code>, or for a single first instance with <code>Unique4j.setLockDirectory()</code>.
+ * Instances only find each other if they use the same lock directory.<br><br>
+ *
+ * Lock directories on tmpfs, such as <code>/dev/shm</code> or the runtime directory of the user, avoid disk writes for lock files.
+ * The runtime directory is also private to the user.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class LockDirectories {
+
+	/**
+	 * System property overriding the default lock directory.
+	 */
+	public static final String PROPERTY = "unique4j.lockDir";
+
+	private LockDirectories() {}
+
+	/**
+	 * Get the default lock directory: the directory named by the system property <code>unique4j.lockDir</code>
+	 * if it is set, otherwise the system temporary directory.
+	 *
+	 * @return the default lock directory
+	 */
+	public static File getDefault() {
+		String path = System.getProperty(PROPERTY);
+		return (path == null || path.isEmpty()) ? temporary() : new File(path);
+	}
+
+	/**
+	 * Get the system temporary directory.
+	 *
+	 * @return the directory named by the system property <code>java.io.tmpdir</code>
+	 */
+	public static File temporary() {
+		return new File(System.getProperty("java.io.tmpdir"));
+	}
+
+	/**
+	 * Get the shared memory directory <code>/dev/shm</code>, which is backed by memory on Linux.
+	 *
+	 * @return the shared memory directory if it is a writable directory, otherwise the system temporary directory
+	 */
+	public static File sharedMemory() {
+		return usable(new File("/dev/shm"));
+	}
+
+	/**
+	 * Get the runtime directory of the user named by the environment variable <code>XDG_RUNTIME_DIR</code>.
+	 *
+	 * @return the runtime directory if it is a writable directory, otherwise the system temporary directory
+	 */
+	public static File runtime() {
+		String path = System.getenv("XDG_RUNTIME_DIR");
+		return (path == null || path.isEmpty()) ? temporary() : usable(new File(path));
+	}
+
+	// fall back to the system temporary directory if a directory cannot be used
+	private static File usable(File directory) {
+		return (directory.isDirectory() && directory.canWrite()) ? directory : temporary();
+	}
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+/**
+ * Mode in which an instance acquires the lock.
+ * 
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public enum LockMode {
+	
+	/**
+	 * Hold a read lock which any number of instances can hold at the same time.
+	 * Readers neither start a server nor send messages, and run alongside the first instance.
+	 */
+	SHARED,
+	
+	/**
+	 * Compete for the lock of the application-wide singleton.
+	 * The elected instance becomes the first instance, all other instances send their message to it.
+	 */
+	EXCLUSIVE
+
+}
@@ -0,0 +1,108 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.IOException;
+
+/**
+ * Strategy electing the first instance and publishing its endpoint.<br><br>
+ *
+ * A lock strategy combines election and discovery: the elected instance holds the lock of a name
+ * and publishes the endpoint on which it accepts messages, which other instances resolve by the same name.
+ * The default strategy is <code>FileLockStrategy</code>, which uses lock files in a lock directory.
+ * Strategies can be swapped with <code>Unique4j.setLockStrategy()</code>, e.g. to benchmark them independently.<br><br>
+ *
+ * Implementations must be safe for use by multiple threads.
+ * Clients commonly resolve endpoints from the JVM of the first instance, so no operation may disturb a lock held in the same process.
+ * In particular, strategies based on POSIX record locks must never close a descriptor of a locked file, as that drops every lock of the process on it.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public interface LockStrategy {
+
+	/**
+	 * Lock held by an elected first instance.
+	 *
+	 * @author Pratanu Mandal
+	 * @since 1.6
+	 */
+	interface Lock {
+
+		/**
+		 * Publish the endpoint of the first instance, replacing the endpoint published before.
+		 * The lock must be kept while publishing.
+		 *
+		 * @param endpoint endpoint of the first instance
+		 * @throws IOException if the endpoint cannot be published
+		 */
+		void publish(String endpoint) throws IOException;
+
+		/**
+		 * Release the lock. Repeated calls have no effect.
+		 *
+		 * @param withdraw if true, withdraw the endpoint before releasing the lock so that no other instance resolves a closed server;
+		 * if false, leave it for a successor which has been handed the lock
+		 * @throws IOException if the lock cannot be released
+		 */
+		void release(boolean withdraw) throws IOException;
+
+	}
+
+	/**
+	 * Try to become the first instance of a name without waiting.<br>
+	 * A failed attempt must not disturb the lock of a first instance in the same process.
+	 *
+	 * @param name name of the lock
+	 * @return the lock, or null if another instance holds it
+	 * @throws IOException if the lock cannot be obtained
+	 */
+	Lock tryLock(String name) throws IOException;
+
+	/**
+	 * Try to become the first instance of a name, waiting for the current holder to release it.
+	 *
+	 * @param name name of the lock
+	 * @param timeoutNanos maximum time to wait in nanoseconds, tried once if not positive
+	 * @return the lock, or null if the timeout elapsed
+	 * @throws IOException if the lock cannot be obtained
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	Lock lock(String name, long timeoutNanos) throws IOException, InterruptedException;
+
+	/**
+	 * Check whether a first instance holds the lock of a name.<br>
+	 * The check must be cheap enough for frequent status probes and must neither open a socket nor disturb a concurrent election.
+	 *
+	 * @param name name of the lock
+	 * @return true if a first instance holds the lock
+	 * @throws IOException if the lock cannot be checked
+	 */
+	boolean isLocked(String name) throws IOException;
+
+	/**
+	 * Resolve the endpoint published by the first instance of a name.<br>
+	 * Resolving must not disturb the lock of a first instance in the same process.
+	 *
+	 * @param name name of the lock
+	 * @return the endpoint, or null if none is published
+	 * @throws IOException if the endpoint cannot be read
+	 */
+	String resolve(String name) throws IOException;
+
+}
@@ -0,0 +1,237 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Reusable frame buffer and charset coders used on the message path.<br><br>
+ *
+ * Instances are handed out by <code>MessageCodecPool</code> and must only be used by one thread at a time.
+ * Messages which fit into the pooled buffer are encoded and decoded without allocating anything but the resulting string.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class MessageCodec {
+
+	// charset used for all messages and responses
+	static final Charset CHARSET = Charset.forName("UTF-8");
+
+	// pooled frame buffer
+	private final ByteBuffer buffer;
+
+	// pooled read-only view of the frame buffer handed to user code
+	private final ByteBuffer view;
+
+	// capacity of the pooled control buffer
+	private static final int CONTROL_CAPACITY = 256;
+
+	// pooled buffer for frame headers and responses
+	private final ByteBuffer control;
+
+	// pooled vector used for gathering writes of header and payload
+	private final ByteBuffer[] vector;
+
+	// pooled character buffer
+	private final CharBuffer chars;
+
+	// cached encoder
+	private final CharsetEncoder encoder;
+
+	// cached decoder
+	private final CharsetDecoder decoder;
+
+	MessageCodec(int capacity, boolean direct) {
+		this.buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		this.view = buffer.asReadOnlyBuffer();
+		this.control = direct ? ByteBuffer.allocateDirect(CONTROL_CAPACITY) : ByteBuffer.allocate(CONTROL_CAPACITY);
+		this.vector = new ByteBuffer[2];
+		this.chars = CharBuffer.allocate(capacity);
+
+		this.encoder = CHARSET.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+		this.decoder = CHARSET.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Get a cleared buffer with the limit set to <code>length</code>.<br>
+	 * The pooled buffer is returned if it is large enough, a new heap buffer otherwise.
+	 *
+	 * @param length required number of bytes
+	 * @return buffer ready to be filled
+	 */
+	ByteBuffer buffer(int length) {
+		if (length > buffer.capacity()) {
+			return ByteBuffer.allocate(length);
+		}
+
+		buffer.clear();
+		buffer.limit(length);
+		return buffer;
+	}
+
+	/**
+	 * Get a read-only view of the remaining bytes of a filled buffer.<br>
+	 * The pooled view is returned for the pooled buffer, so it is only valid until the buffer is reused.
+	 *
+	 * @param payload buffer returned by <code>buffer()</code> after it has been filled and flipped
+	 * @return read-only buffer containing the remaining bytes of the payload
+	 */
+	ByteBuffer readOnly(ByteBuffer payload) {
+		if (payload != buffer) {
+			return payload.asReadOnlyBuffer();
+		}
+
+		// user code may have moved the view or changed its byte order during the previous message
+		view.clear();
+		view.limit(payload.limit());
+		view.position(payload.position());
+		view.order(ByteOrder.BIG_ENDIAN);
+		return view;
+	}
+
+	/**
+	 * Get a cleared control buffer with the limit set to <code>length</code>.<br>
+	 * The control buffer is independent of the message buffer and is used for frame headers and responses.
+	 *
+	 * @param length required number of bytes
+	 * @return buffer ready to be filled
+	 */
+	ByteBuffer control(int length) {
+		if (length > control.capacity()) {
+			return ByteBuffer.allocate(length);
+		}
+
+		control.clear();
+		control.limit(length);
+		return control;
+	}
+
+	/**
+	 * Encode a message into the pooled buffer.<br>
+	 * Messages too large for the pooled buffer are encoded into a new heap buffer.
+	 *
+	 * @param message message to encode
+	 * @return buffer containing the message bytes, or null if the message is null
+	 */
+	ByteBuffer encode(String message) {
+		if (message == null) {
+			return null;
+		}
+
+		int length = message.length();
+		int maxBytes = (int) Math.ceil(length * (double) encoder.maxBytesPerChar());
+
+		// message too large for the pooled buffers
+		if (length > chars.capacity() || maxBytes > buffer.capacity()) {
+			return ByteBuffer.wrap(message.getBytes(CHARSET));
+		}
+
+		// copy characters into the pooled character buffer
+		chars.clear();
+		message.getChars(0, length, chars.array(), 0);
+		chars.limit(length);
+
+		// encode characters into the pooled buffer
+		ByteBuffer payload = buffer(maxBytes);
+
+		encoder.reset();
+		encoder.encode(chars, payload, true);
+		encoder.flush(payload);
+
+		payload.flip();
+		return payload;
+	}
+
+	/**
+	 * Prepare a frame consisting of the length prefix and the payload.<br>
+	 * A null payload is framed with length -1.
+	 *
+	 * @param payload message bytes, or null
+	 * @return pooled vector of buffers ready for a gathering write
+	 */
+	ByteBuffer[] frame(ByteBuffer payload) {
+		ByteBuffer header = control(Protocol.INT_BYTES);
+		header.putInt(payload == null ? -1 : payload.remaining());
+		header.flip();
+
+		vector[0] = header;
+		vector[1] = (payload == null) ? buffer(0) : payload;
+		return vector;
+	}
+
+	/**
+	 * Decode the remaining bytes of a buffer into a string.
+	 *
+	 * @param payload buffer containing the message bytes
+	 * @return decoded message
+	 */
+	String decode(ByteBuffer payload) {
+		int length = payload.remaining();
+
+		// payload too large for the pooled character buffer
+		if (length > chars.capacity()) {
+			try {
+				return decoder.decode(payload).toString();
+			} catch (CharacterCodingException e) {
+				// never thrown as malformed input is replaced
+				throw new IllegalStateException(e);
+			}
+		}
+
+		// UTF-8 never produces more characters than bytes
+		chars.clear();
+		decoder.reset();
+		CoderResult result = decoder.decode(payload, chars, true);
+		if (result.isUnderflow()) {
+			decoder.flush(chars);
+		}
+
+		return new String(chars.array(), 0, chars.position());
+	}
+
+	/**
+	 * Encode a string into a standalone length prefixed frame.<br>
+	 * This is used to pre-encode constant responses once.
+	 *
+	 * @param value string to encode
+	 * @return bytes of the frame
+	 */
+	static byte[] encodeFrame(String value) {
+		if (value == null) {
+			return ByteBuffer.allocate(Protocol.INT_BYTES).putInt(-1).array();
+		}
+
+		byte[] bytes = value.getBytes(CHARSET);
+		return ByteBuffer.allocate(Protocol.INT_BYTES + bytes.length).putInt(bytes.length).put(bytes).array();
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+/**
+ * Small bounded pool of <code>MessageCodec</code> objects.<br><br>
+ *
+ * Codecs are created lazily and at most <code>size</code> of them are retained.
+ * Acquiring and releasing a codec does not allocate once the pool is warm.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class MessageCodecPool {
+
+	// default capacity of pooled buffers
+	static final int DEFAULT_CAPACITY = 8192;
+
+	// default number of retained codecs
+	static final int DEFAULT_SIZE = 8;
+
+	// capacity of pooled buffers
+	private final int capacity;
+
+	// use direct buffers or not
+	private final boolean direct;
+
+	// retained codecs
+	private final MessageCodec[] codecs;
+
+	// number of retained codecs
+	private int count;
+
+	MessageCodecPool(int size, int capacity, boolean direct) {
+		this.capacity = capacity;
+		this.direct = direct;
+		this.codecs = new MessageCodec[size];
+	}
+
+	/**
+	 * Take a codec from the pool, creating one if the pool is empty.
+	 *
+	 * @return codec for exclusive use by the caller
+	 */
+	MessageCodec acquire() {
+		synchronized (codecs) {
+			if (count > 0) {
+				MessageCodec codec = codecs[--count];
+				codecs[count] = null;
+				return codec;
+			}
+		}
+
+		return new MessageCodec(capacity, direct);
+	}
+
+	/**
+	 * Return a codec to the pool. The codec is dropped if the pool is full.
+	 *
+	 * @param codec codec previously obtained from <code>acquire()</code>
+	 */
+	void release(MessageCodec codec) {
+		synchronized (codecs) {
+			if (count < codecs.length) {
+				codecs[count++] = codec;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Non-blocking decoder for a connection accepted by an embedded first instance.<br><br>
+ *
+ * The application calls <code>read()</code> whenever the connection is readable.
+ * The decoder consumes whatever bytes are available and delivers the message on the calling thread once it is complete.
+ * The decoder takes ownership of the connection and closes it when it is done.<br><br>
+ *
+ * Sample usage inside the event loop of the application:
+ * <pre>
+ *	if (key.isAcceptable()) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;SocketChannel channel = unique.getServerChannel().accept();
+ *	&nbsp;&nbsp;&nbsp;&nbsp;if (channel != null) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;channel.configureBlocking(false);
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;channel.register(selector, SelectionKey.OP_READ, unique.newDecoder());
+ *	&nbsp;&nbsp;&nbsp;&nbsp;}
+ *	}
+ *	else if (key.isReadable()) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;MessageDecoder decoder = (MessageDecoder) key.attachment();
+ *	&nbsp;&nbsp;&nbsp;&nbsp;if (!decoder.read((SocketChannel) key.channel())) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;key.cancel();
+ *	&nbsp;&nbsp;&nbsp;&nbsp;}
+ *	}
+ * </pre>
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class MessageDecoder {
+
+	// embedded first instance
+	private final Unique4j unique;
+
+	// pool of message buffers
+	private final MessageCodecPool codecPool;
+
+	// codec holding the message, owned by the acknowledgement once admitted
+	private MessageCodec codec;
+
+	// buffer for the message length
+	private final ByteBuffer header = ByteBuffer.allocate(Protocol.INT_BYTES);
+
+	// buffer for the message bytes, null until the length is known
+	private ByteBuffer payload;
+
+	// length of the message
+	private int length;
+
+	// completion handle of the admitted message
+	private Acknowledgement acknowledgement;
+
+	// decoder is done with the connection
+	private boolean finished;
+
+	MessageDecoder(Unique4j unique, MessageCodecPool codecPool) {
+		this.unique = unique;
+		this.codecPool = codecPool;
+	}
+
+	/**
+	 * Read the available bytes of a connection without blocking.
+	 *
+	 * @param channel connection accepted from the server socket, in non-blocking mode
+	 * @return true if more bytes are expected, false if the decoder is done and the connection has been closed or handed over
+	 * @throws IOException if reading from the connection fails
+	 */
+	public boolean read(SocketChannel channel) throws IOException {
+		if (finished) {
+			return false;
+		}
+
+		try {
+			if (payload == null) {
+				// read message length from client
+				if (channel.read(header) < 0) {
+					return finish(channel);
+				}
+				if (header.hasRemaining()) {
+					return true;
+				}
+
+				// control frames are not supported in embedded mode
+				length = header.getInt(0);
+				if (length < -1) {
+					return finish(channel);
+				}
+
+				// reserve resources for the message
+				codec = codecPool.acquire();
+				acknowledgement = unique.admitMessage(channel, codec, length, false);
+				if (acknowledgement == null) {
+					return finish(channel);
+				}
+
+				payload = codec.buffer(Math.max(length, 0));
+			}
+
+			// read message bytes from client
+			if (payload.hasRemaining() && channel.read(payload) < 0) {
+				acknowledgement.fail();
+				return finish(channel);
+			}
+			if (payload.hasRemaining()) {
+				return true;
+			}
+
+			// hand message to user code
+			finished = true;
+			payload.flip();
+			try {
+				unique.deliverMessage(channel, codec, (length < 0) ? null : codec.readOnly(payload), acknowledgement);
+			} catch (RuntimeException e) {
+				unique.handleException(new Unique4jException(e));
+			}
+			return false;
+		} catch (IOException e) {
+			// release everything held for the message
+			if (acknowledgement != null) {
+				acknowledgement.fail();
+			}
+			finish(channel);
+			throw e;
+		}
+	}
+
+	// release resources not owned by an acknowledgement and close the connection
+	private boolean finish(SocketChannel channel) throws IOException {
+		finished = true;
+
+		if (acknowledgement == null) {
+			// return buffers to pool
+			if (codec != null) {
+				codecPool.release(codec);
+				codec = null;
+			}
+
+			// close socket
+			channel.close();
+		}
+
+		return false;
+	}
+
+}
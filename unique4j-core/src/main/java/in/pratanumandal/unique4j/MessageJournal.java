@@ -0,0 +1,526 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Memory-mapped journal of messages received by the first instance.<br><br>
+ *
+ * Every message is appended as a pending entry and made durable before it is acknowledged to the subsequent instance.
+ * Concurrent committers are batched so that a single <code>force()</code> covers all entries appended so far (group commit).
+ * Entries are marked as done once <code>receiveMessage()</code> returns; pending entries are replayed by the next first instance.<br><br>
+ *
+ * The journal is reset whenever no entry is pending. Otherwise processed entries are reclaimed by compaction,
+ * which copies the pending entries into the other of two journal files with a higher generation.
+ * The copy only becomes valid once it is complete and durable, so a crash during compaction leaves the previous generation in place.
+ * Entries are identified by a sequence number rather than their position, which changes with compaction.
+ * A journal file never grows beyond <code>MAX_CAPACITY</code>.<br><br>
+ *
+ * Every entry carries a CRC32 of its sequence number, length and payload. Pages of the mapped file are written back in any order,
+ * so a crash may leave the tail pointing past an entry which has been written partially. Opening the journal stops at the first entry
+ * whose checksum does not match and discards it along with all later entries, which have never been acknowledged as durable.<br><br>
+ *
+ * Layout: a header of magic, tail offset and generation,
+ * followed by entries of sequence number, length (-1 for null), checksum, state and payload.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class MessageJournal {
+
+	// default initial size of the journal
+	static final int DEFAULT_CAPACITY = 1024 * 1024;
+
+	// maximum size of a journal file
+	static final int MAX_CAPACITY = 1024 * 1024 * 1024;
+
+	// identifies a journal file
+	private static final int MAGIC = 0x554A4E33;
+
+	// offset of the tail in the header
+	private static final int TAIL_OFFSET = Protocol.INT_BYTES;
+
+	// offset of the generation in the header
+	private static final int GENERATION_OFFSET = 2 * Protocol.INT_BYTES;
+
+	// size of the header
+	private static final int HEADER_SIZE = 2 * Protocol.INT_BYTES + Protocol.LONG_BYTES;
+
+	// offset of the length in an entry
+	private static final int LENGTH_OFFSET = Protocol.LONG_BYTES;
+
+	// offset of the checksum in an entry, which covers the bytes before it and the payload
+	private static final int CHECKSUM_OFFSET = Protocol.LONG_BYTES + Protocol.INT_BYTES;
+
+	// offset of the state in an entry
+	private static final int STATE_OFFSET = CHECKSUM_OFFSET + Protocol.INT_BYTES;
+
+	// size of an entry header
+	private static final int ENTRY_HEADER_SIZE = STATE_OFFSET + 1;
+
+	// entry is waiting to be processed
+	private static final byte PENDING = 1;
+
+	// entry has been processed
+	private static final byte DONE = 2;
+
+	// journal files used alternately by compaction
+	private final File[] files;
+
+	// journal file RAF objects, opened on first use
+	private final RandomAccessFile[] rafs = new RandomAccessFile[2];
+
+	// initial size of a journal file
+	private final int capacity;
+
+	// index of the journal file in use
+	private int active;
+
+	// mapped journal file in use
+	private MappedByteBuffer buffer;
+
+	// generation of the journal file in use
+	private long generation;
+
+	// offset after the last entry
+	private int tail;
+
+	// bytes taken by processed entries
+	private long doneBytes;
+
+	// positions of pending entries by sequence number
+	private final Map<Long, Integer> positions = new HashMap<Long, Integer>();
+
+	// sequence number of the next entry
+	private long sequence;
+
+	// number of appended entries
+	private long appended;
+
+	// guards the commit state
+	private final Object commitLock = new Object();
+
+	// number of entries known to be durable
+	private long durable;
+
+	// a force is in progress
+	private boolean forcing;
+
+	// journal has been closed
+	private boolean closed;
+
+	// copies entry bytes for checksums
+	private final byte[] scratch = new byte[8192];
+
+	private MessageJournal(File file, int capacity) throws IOException {
+		this.files = new File[] { file, new File(file.getPath() + ".1") };
+		this.capacity = capacity;
+
+		try {
+			// use the valid journal file of the latest generation
+			active = -1;
+			for (int i = 0; i < files.length; i++) {
+				if (i > 0 && !files[i].exists()) {
+					continue;
+				}
+
+				MappedByteBuffer mapped = map(i, capacity);
+				int tail = mapped.getInt(TAIL_OFFSET);
+				long generation = mapped.getLong(GENERATION_OFFSET);
+				if (mapped.getInt(0) == MAGIC && tail >= HEADER_SIZE && tail <= mapped.capacity()
+						&& (active == -1 || generation > this.generation)) {
+					this.active = i;
+					this.buffer = mapped;
+					this.tail = tail;
+					this.generation = generation;
+				}
+			}
+
+			if (active == -1) {
+				// new or corrupted journal
+				active = 0;
+				buffer = map(0, capacity);
+				generation = 0;
+				reset();
+			}
+
+			// index entries left pending by a previous first instance
+			int position = HEADER_SIZE;
+			while (position < tail) {
+				// an entry torn by a crash ends the journal
+				if (!isValid(position)) {
+					tail = position;
+					buffer.putInt(TAIL_OFFSET, tail);
+					break;
+				}
+
+				long id = buffer.getLong(position);
+				if (buffer.get(position + STATE_OFFSET) == PENDING) {
+					positions.put(id, position);
+				}
+				else {
+					doneBytes += size(position);
+				}
+				sequence = Math.max(sequence, id + 1);
+				position += size(position);
+			}
+		} catch (IOException e) {
+			closeFiles();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open a journal file, creating it if required.
+	 *
+	 * @param file journal file
+	 * @param capacity initial size of the journal
+	 * @return the opened journal
+	 * @throws IOException if the journal cannot be opened
+	 */
+	static MessageJournal open(File file, int capacity) throws IOException {
+		return new MessageJournal(file, capacity);
+	}
+
+	// map a journal file with at least the given size
+	private MappedByteBuffer map(int index, long size) throws IOException {
+		if (rafs[index] == null) {
+			rafs[index] = new RandomAccessFile(files[index], "rw");
+		}
+
+		RandomAccessFile raf = rafs[index];
+		return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.min(MAX_CAPACITY, Math.max(size, raf.length())));
+	}
+
+	// get the size of the entry at a position
+	private int size(int position) {
+		return ENTRY_HEADER_SIZE + Math.max(buffer.getInt(position + LENGTH_OFFSET), 0);
+	}
+
+	// check whether the entry at a position is complete and intact
+	private boolean isValid(int position) {
+		if (position + ENTRY_HEADER_SIZE > tail) {
+			return false;
+		}
+
+		int length = buffer.getInt(position + LENGTH_OFFSET);
+		if (length < -1 || length > tail - position - ENTRY_HEADER_SIZE) {
+			return false;
+		}
+
+		byte state = buffer.get(position + STATE_OFFSET);
+		if (state != PENDING && state != DONE) {
+			return false;
+		}
+
+		return buffer.getInt(position + CHECKSUM_OFFSET) == checksum(position);
+	}
+
+	// compute the checksum of the entry at a position, which excludes the state changed by acknowledgements
+	private int checksum(int position) {
+		CRC32 crc = new CRC32();
+
+		ByteBuffer source = buffer.duplicate();
+		source.limit(position + CHECKSUM_OFFSET);
+		source.position(position);
+		update(crc, source);
+
+		source.limit(position + size(position));
+		source.position(position + ENTRY_HEADER_SIZE);
+		update(crc, source);
+
+		return (int) crc.getValue();
+	}
+
+	// add the remaining bytes of a buffer to a checksum
+	private void update(CRC32 crc, ByteBuffer source) {
+		while (source.hasRemaining()) {
+			int count = Math.min(scratch.length, source.remaining());
+			source.get(scratch, 0, count);
+			crc.update(scratch, 0, count);
+		}
+	}
+
+	// discard all entries
+	private void reset() {
+		tail = HEADER_SIZE;
+		doneBytes = 0;
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(TAIL_OFFSET, tail);
+		buffer.putLong(GENERATION_OFFSET, generation);
+	}
+
+	/**
+	 * Get the entries which are still pending.<br>
+	 * Payloads are copies, as entries move when the journal is compacted.
+	 *
+	 * @param ids receives the sequence number of each pending entry
+	 * @param payloads receives the payload of each pending entry, or null for a null message
+	 */
+	synchronized void pending(List<Long> ids, List<ByteBuffer> payloads) {
+		int position = HEADER_SIZE;
+		while (position < tail) {
+			int length = buffer.getInt(position + LENGTH_OFFSET);
+
+			if (buffer.get(position + STATE_OFFSET) == PENDING) {
+				ByteBuffer payload = null;
+				if (length > -1) {
+					ByteBuffer source = buffer.duplicate();
+					source.position(position + ENTRY_HEADER_SIZE);
+					source.limit(position + ENTRY_HEADER_SIZE + length);
+
+					payload = ByteBuffer.allocate(length);
+					payload.put(source);
+					payload.flip();
+				}
+
+				ids.add(buffer.getLong(position));
+				payloads.add(payload);
+			}
+
+			position += size(position);
+		}
+	}
+
+	/**
+	 * Append a pending entry to the journal.<br>
+	 * The entry is not durable until <code>commit()</code> returns.
+	 *
+	 * @param payload message bytes, or null for a null message
+	 * @return sequence number of the entry used to acknowledge it
+	 * @throws IOException if the journal cannot make space for the entry or has been closed
+	 */
+	synchronized long append(ByteBuffer payload) throws IOException {
+		if (closed) {
+			throw new IOException("Journal closed");
+		}
+
+		int length = (payload == null) ? -1 : payload.remaining();
+		long size = ENTRY_HEADER_SIZE + Math.max(length, 0);
+
+		// make space for the entry
+		if (positions.isEmpty()) {
+			reset();
+		}
+		if (tail + size > buffer.capacity()) {
+			grow(size);
+		}
+
+		// write entry
+		long id = sequence++;
+		int position = tail;
+		buffer.putLong(position, id);
+		buffer.putInt(position + LENGTH_OFFSET, length);
+		buffer.put(position + STATE_OFFSET, PENDING);
+		if (payload != null) {
+			ByteBuffer target = buffer.duplicate();
+			target.position(position + ENTRY_HEADER_SIZE);
+			target.put(payload.duplicate());
+		}
+		buffer.putInt(position + CHECKSUM_OFFSET, checksum(position));
+
+		// publish entry
+		tail = position + (int) size;
+		buffer.putInt(TAIL_OFFSET, tail);
+
+		positions.put(id, position);
+		appended++;
+
+		return id;
+	}
+
+	// make space for an entry, preferring to reclaim processed entries over growing the journal file
+	private void grow(long size) throws IOException {
+		long live = tail - HEADER_SIZE - doneBytes;
+		if (HEADER_SIZE + live + size > MAX_CAPACITY) {
+			throw new IOException("Journal full: " + positions.size() + " entries pending");
+		}
+
+		if (doneBytes >= live || tail + size > MAX_CAPACITY) {
+			compact(Math.max(capacity, 2 * (HEADER_SIZE + live + size)));
+		}
+		else {
+			buffer = map(active, Math.max(2L * buffer.capacity(), tail + size));
+		}
+	}
+
+	// copy the pending entries into the other journal file and switch to it
+	private void compact(long size) throws IOException {
+		int target = 1 - active;
+		MappedByteBuffer copy = map(target, size);
+
+		// invalidate the target until the copy is complete
+		copy.putInt(0, 0);
+
+		int end = HEADER_SIZE;
+		int position = HEADER_SIZE;
+		while (position < tail) {
+			int entrySize = size(position);
+			if (buffer.get(position + STATE_OFFSET) == PENDING) {
+				ByteBuffer source = buffer.duplicate();
+				source.position(position);
+				source.limit(position + entrySize);
+
+				ByteBuffer destination = copy.duplicate();
+				destination.position(end);
+				destination.put(source);
+
+				positions.put(buffer.getLong(position), end);
+				end += entrySize;
+			}
+			position += entrySize;
+		}
+
+		copy.putInt(TAIL_OFFSET, end);
+		copy.putLong(GENERATION_OFFSET, generation + 1);
+		copy.force();
+
+		// the copy supersedes the journal file in use once it is valid
+		copy.putInt(0, MAGIC);
+		copy.force();
+
+		active = target;
+		buffer = copy;
+		generation++;
+		tail = end;
+		doneBytes = 0;
+	}
+
+	/**
+	 * Make all entries appended so far durable.<br>
+	 * Threads committing concurrently share a single <code>force()</code> of the journal.
+	 *
+	 * @throws IOException if the journal cannot be forced or the thread is interrupted
+	 */
+	void commit() throws IOException {
+		long target;
+		synchronized (this) {
+			target = appended;
+		}
+
+		while (true) {
+			// wait for a force in progress, it may already cover the entries
+			synchronized (commitLock) {
+				while (forcing && durable < target) {
+					try {
+						commitLock.wait();
+					} catch (InterruptedException e) {
+						throw new InterruptedIOException();
+					}
+				}
+
+				if (durable >= target) {
+					return;
+				}
+
+				forcing = true;
+			}
+
+			// force everything appended so far on behalf of all waiting threads
+			// entries appended to a journal file before compaction have been forced with the copy
+			long covered;
+			MappedByteBuffer mapped;
+			synchronized (this) {
+				covered = appended;
+				mapped = buffer;
+			}
+
+			boolean forced = false;
+			try {
+				mapped.force();
+				forced = true;
+			} finally {
+				synchronized (commitLock) {
+					if (forced && covered > durable) {
+						durable = covered;
+					}
+					forcing = false;
+					commitLock.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark an entry as processed.<br>
+	 * The mark is made durable by a later commit, so an entry may be replayed once more after a crash.
+	 * Entries acknowledged after the journal has been closed are left pending for the next first instance.
+	 *
+	 * @param id sequence number of the entry returned by <code>append()</code>
+	 */
+	synchronized void acknowledge(long id) {
+		if (closed) {
+			return;
+		}
+
+		Integer position = positions.remove(id);
+		if (position != null) {
+			buffer.put(position + STATE_OFFSET, DONE);
+			doneBytes += size(position);
+		}
+	}
+
+	/**
+	 * Force and close the journal. The journal files are deleted if no entries are pending.
+	 *
+	 * @throws IOException if the journal cannot be closed
+	 */
+	synchronized void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+
+		boolean empty = positions.isEmpty();
+		if (empty) {
+			reset();
+		}
+
+		try {
+			buffer.force();
+		} finally {
+			closeFiles();
+		}
+
+		if (empty) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	// close the journal file RAF objects
+	private void closeFiles() throws IOException {
+		for (RandomAccessFile raf : rafs) {
+			if (raf != null) {
+				raf.close();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trip times measured by pinging the first instance.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class PingResult {
+
+	// port of the first instance
+	private final int port;
+
+	// time taken to connect
+	private final long connectNanos;
+
+	// time taken to validate the first instance
+	private final long handshakeNanos;
+
+	// time taken to echo a frame on the open connection
+	private final long replyNanos;
+
+	PingResult(int port, long connectNanos, long handshakeNanos, long replyNanos) {
+		this.port = port;
+		this.connectNanos = connectNanos;
+		this.handshakeNanos = handshakeNanos;
+		this.replyNanos = replyNanos;
+	}
+
+	/**
+	 * Get the port of the first instance.
+	 *
+	 * @return the port
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Get the time taken to establish the connection.
+	 *
+	 * @param unit time unit of the result
+	 * @return connect time in the given unit
+	 */
+	public long getConnectTime(TimeUnit unit) {
+		return unit.convert(connectNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get the time taken by the first instance to accept the connection and answer with its APP_ID.
+	 *
+	 * @param unit time unit of the result
+	 * @return handshake time in the given unit
+	 */
+	public long getHandshakeTime(TimeUnit unit) {
+		return unit.convert(handshakeNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get the time taken by the first instance to echo a frame on the established connection.
+	 *
+	 * @param unit time unit of the result
+	 * @return reply time in the given unit
+	 */
+	public long getReplyTime(TimeUnit unit) {
+		return unit.convert(replyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Get the total time of the ping.
+	 *
+	 * @param unit time unit of the result
+	 * @return sum of connect, handshake and reply times in the given unit
+	 */
+	public long getTotalTime(TimeUnit unit) {
+		return unit.convert(connectNanos + handshakeNanos + replyNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "PingResult[port=" + port + ", connect=" + getConnectTime(TimeUnit.MICROSECONDS) + "us, handshake=" + getHandshakeTime(TimeUnit.MICROSECONDS)
+				+ "us, reply=" + getReplyTime(TimeUnit.MICROSECONDS) + "us]";
+	}
+
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+
+/**
+ * Memory-mapped load counters of the first instances of a bounded pool.<br><br>
+ *
+ * Every slot of the pool has its own lock file and is elected like a singleton.
+ * The first instance of a slot publishes the number of its messages in flight in this table,
+ * so that subsequent instances can forward their message to the least loaded first instance.
+ * Each counter is only written by the first instance of its slot, therefore no locking is required.<br><br>
+ *
+ * Layout: a header of magic and size, followed by one int counter per slot.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class PoolTable {
+
+	// identifies a pool file
+	private static final int MAGIC = 0x554A504C;
+
+	// size of the header holding magic and size
+	private static final int HEADER_SIZE = 2 * Protocol.INT_BYTES;
+
+	// mapped pool file
+	private final MappedByteBuffer buffer;
+
+	// number of slots
+	private final int size;
+
+	private PoolTable(File file, int size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+
+		try {
+			FileLock lock = raf.getChannel().lock(0, HEADER_SIZE, false);
+			try {
+				// use the larger of the existing and the requested size
+				if (raf.length() >= HEADER_SIZE) {
+					raf.seek(0);
+					if (raf.readInt() == MAGIC) {
+						size = Math.max(size, raf.readInt());
+					}
+				}
+				this.size = size;
+
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) size * Protocol.INT_BYTES);
+				buffer.putInt(Protocol.INT_BYTES, size);
+				buffer.putInt(0, MAGIC);
+			} finally {
+				lock.release();
+			}
+		} finally {
+			// the mapping remains valid after the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * Open a pool file, creating it if required.
+	 *
+	 * @param file pool file
+	 * @param size number of slots of the pool
+	 * @return the opened pool
+	 * @throws IOException if the pool cannot be opened
+	 */
+	static PoolTable open(File file, int size) throws IOException {
+		return new PoolTable(file, size);
+	}
+
+	/**
+	 * Publish the load of a slot.
+	 *
+	 * @param slot slot of the first instance
+	 * @param load number of messages in flight
+	 */
+	void publish(int slot, int load) {
+		buffer.putInt(HEADER_SIZE + slot * Protocol.INT_BYTES, load);
+	}
+
+	/**
+	 * Get the least loaded slot among the first <code>count</code> slots.
+	 *
+	 * @param count number of slots to consider
+	 * @return the slot with the lowest load, the lowest slot on ties
+	 */
+	int leastLoaded(int count) {
+		int best = 0;
+		int bestLoad = Integer.MAX_VALUE;
+		for (int slot = 0; slot < Math.min(count, size); slot++) {
+			int load = buffer.getInt(HEADER_SIZE + slot * Protocol.INT_BYTES);
+			if (load < bestLoad) {
+				best = slot;
+				bestLoad = load;
+			}
+		}
+		return best;
+	}
+
+}
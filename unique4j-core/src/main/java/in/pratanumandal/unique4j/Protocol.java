@@ -0,0 +1,407 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Wire protocol helpers shared by the first and subsequent instances.<br><br>
+ *
+ * A message frame is a 4 byte big-endian length followed by that many UTF-8 bytes.
+ * A length of -1 denotes a null message. The first instance answers every message with a frame containing its APP_ID
+ * followed by a 4 byte delivery status code.<br><br>
+ *
+ * A control frame starts with <code>MAGIC</code> in place of the length, followed by a type byte and the APP_ID frame of the sender.
+ * The rest of a control frame depends on its type. Control frames are answered like messages.<br><br>
+ *
+ * The first line of the lock file holds the port of the first instance.
+ * A second line containing <code>HOSTED_FLAG</code> marks a first instance served by a shared host,
+ * which only accepts messages carried in a <code>ROUTED</code> control frame.
+ * A line starting with <code>TOKEN_PREFIX</code> holds the secret token a successor must present to take over the lock.
+ * The first instance holds an exclusive lock on the single byte region at <code>ELECTION_POSITION</code> of the lock file,
+ * and another one at <code>LIVENESS_POSITION</code> which status probes test with a shared lock without disturbing elections.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class Protocol {
+
+	// number of bytes in an int
+	static final int INT_BYTES = 4;
+
+	// number of bytes in a long
+	static final int LONG_BYTES = 8;
+
+	// position of the election lock region, beyond any port data in the lock file
+	static final long ELECTION_POSITION = Long.MAX_VALUE - 1;
+
+	// position of the liveness lock region held by the first instance along with the election lock
+	static final long LIVENESS_POSITION = ELECTION_POSITION - 1;
+
+	// marks a control frame, never a valid message length
+	static final int MAGIC = 0xCAFE5534;
+
+	// control frame handing the lock over to a successor, followed by its port, the drain timeout in milliseconds and the handover token
+	static final byte HANDOVER = 1;
+
+	// control frame opening a keep-alive session, followed by message frames each answered by a status code only
+	static final byte SESSION = 2;
+
+	// control frame subscribing to broadcasts, followed by event frames sent by the first instance
+	static final byte SUBSCRIBE = 3;
+
+	// control frame measuring the round trip, followed by a long echoed by the first instance after its response
+	static final byte PING = 4;
+
+	// control frame routing a message frame to the first instance of its APP_ID, followed by the message frame
+	static final byte ROUTED = 5;
+
+	// control frame carrying a message to the cluster leader, followed by the fencing token and secret of its lease and the message frame
+	static final byte CLUSTER = 6;
+
+	// second line of the lock file of a first instance served by a shared host
+	static final String HOSTED_FLAG = "hosted";
+
+	// prefix of the line of the lock file holding the handover token
+	static final String TOKEN_PREFIX = "token=";
+
+	// longest pause of an accept loop after consecutive failures in milliseconds
+	static final long MAX_ACCEPT_BACKOFF = 1000;
+
+	private Protocol() {}
+
+	/**
+	 * Get the loopback socket address of a port.<br>
+	 * The loopback address is resolved on use rather than in a static initializer,
+	 * so that it is never captured while building a native image.
+	 *
+	 * @param port port of the first instance
+	 * @return loopback socket address
+	 */
+	static InetSocketAddress address(int port) {
+		return new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+	}
+
+	/**
+	 * Pause an accept loop after a failed accept, doubling the pause with every consecutive failure.<br>
+	 * Accepting fails persistently e.g. while the process is out of file descriptors, and retrying at once would keep a CPU busy.
+	 *
+	 * @param backoff previous pause in milliseconds, 0 after a successful accept
+	 * @return the pause in milliseconds
+	 * @throws InterruptedException if interrupted while pausing
+	 */
+	static long backOff(long backoff) throws InterruptedException {
+		long pause = Math.min(MAX_ACCEPT_BACKOFF, Math.max(1, backoff * 2));
+		Thread.sleep(pause);
+		return pause;
+	}
+
+	/**
+	 * Hash a string for the mapped tables shared between instances.
+	 *
+	 * @param value string to hash
+	 * @return 64 bit FNV-1a hash of the UTF-8 bytes of the string
+	 */
+	static long hash(String value) {
+		long hash = 0xcbf29ce484222325L;
+		for (byte b : value.getBytes(MessageCodec.CHARSET)) {
+			hash ^= (b & 0xff);
+			hash *= 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Get the process ID of this JVM.
+	 *
+	 * @return the process ID, or -1 if it is unknown
+	 */
+	static long pid() {
+		// the name of the runtime is pid@host on common JVMs
+		String name = ManagementFactory.getRuntimeMXBean().getName();
+		try {
+			return Long.parseLong(name.substring(0, name.indexOf('@')));
+		} catch (RuntimeException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Build the endpoint of a first instance as published in its lock file.
+	 *
+	 * @param port port of the first instance
+	 * @param hosted true if the first instance is served by a shared host
+	 * @return the endpoint
+	 */
+	static String endpoint(int port, boolean hosted) {
+		return endpoint(port, hosted, 0);
+	}
+
+	/**
+	 * Build the endpoint of a first instance as published in its lock file.
+	 *
+	 * @param port port of the first instance
+	 * @param hosted true if the first instance is served by a shared host
+	 * @param token handover token of the first instance, 0 if it does not accept handovers
+	 * @return the endpoint
+	 */
+	static String endpoint(int port, boolean hosted, long token) {
+		StringBuilder endpoint = new StringBuilder().append(port);
+		if (hosted) {
+			endpoint.append('\n').append(HOSTED_FLAG);
+		}
+		if (token != 0) {
+			endpoint.append('\n').append(TOKEN_PREFIX).append(token);
+		}
+		return endpoint.toString();
+	}
+
+	/**
+	 * Get the port of the first instance from its endpoint.
+	 *
+	 * @param endpoint endpoint of the first instance, may be null
+	 * @return the port, or -1 if there is no endpoint or it is corrupted
+	 */
+	static int parsePort(String endpoint) {
+		if (endpoint == null) {
+			return -1;
+		}
+
+		int end = endpoint.indexOf('\n');
+		try {
+			return Integer.parseInt((end == -1) ? endpoint : endpoint.substring(0, end));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Check whether an endpoint names a first instance served by a shared host.
+	 *
+	 * @param endpoint endpoint of the first instance, may be null
+	 * @return true if the endpoint carries the hosted flag, false otherwise
+	 */
+	static boolean parseHosted(String endpoint) {
+		return attribute(endpoint, HOSTED_FLAG) != null;
+	}
+
+	/**
+	 * Get the handover token of the first instance from its endpoint.
+	 *
+	 * @param endpoint endpoint of the first instance, may be null
+	 * @return the handover token, or 0 if there is none or it is corrupted
+	 */
+	static long parseToken(String endpoint) {
+		String token = attribute(endpoint, TOKEN_PREFIX);
+		try {
+			return (token == null) ? 0 : Long.parseLong(token.substring(TOKEN_PREFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	// find the line following the port which starts with a prefix
+	private static String attribute(String endpoint, String prefix) {
+		if (endpoint == null) {
+			return null;
+		}
+
+		String[] lines = endpoint.split("\n");
+		for (int i = 1; i < lines.length; i++) {
+			if (lines[i].startsWith(prefix)) {
+				return lines[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Build a control frame carrying APP_ID.
+	 *
+	 * @param type control frame type
+	 * @param appIdFrame pre-encoded APP_ID frame
+	 * @return bytes of the control frame
+	 */
+	static byte[] controlFrame(byte type, byte[] appIdFrame) {
+		return ByteBuffer.allocate(INT_BYTES + 1 + appIdFrame.length)
+				.putInt(MAGIC).put(type).put(appIdFrame).array();
+	}
+
+	/**
+	 * Read from a channel until the buffer is full.
+	 *
+	 * @param channel channel to read from
+	 * @param buffer buffer to fill
+	 * @throws IOException if the channel is closed before the buffer is full
+	 */
+	static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	/**
+	 * Read and discard bytes from a channel.
+	 *
+	 * @param channel channel to read from
+	 * @param buffer scratch buffer
+	 * @param length number of bytes to discard
+	 * @throws IOException if the channel is closed before all bytes are read
+	 */
+	static void skip(ReadableByteChannel channel, ByteBuffer buffer, long length) throws IOException {
+		while (length > 0) {
+			buffer.clear();
+			if (length < buffer.capacity()) {
+				buffer.limit((int) length);
+			}
+			readFully(channel, buffer);
+			length -= buffer.limit();
+		}
+	}
+
+	/**
+	 * Read a single int from a channel using the supplied buffer.
+	 *
+	 * @param channel channel to read from
+	 * @param codec codec providing the buffer
+	 * @return the int read
+	 * @throws IOException if the channel is closed before the int is read
+	 */
+	static int readInt(ReadableByteChannel channel, MessageCodec codec) throws IOException {
+		ByteBuffer buffer = codec.control(INT_BYTES);
+		readFully(channel, buffer);
+		return buffer.getInt(0);
+	}
+
+	/**
+	 * Read the response frame of a first instance and compare it with the expected APP_ID frame without decoding it.
+	 *
+	 * @param channel channel to read from
+	 * @param buffer scratch buffer holding at least as many bytes as the APP_ID frame
+	 * @param appIdFrame pre-encoded APP_ID frame
+	 * @return true if the response matches the APP_ID, false otherwise
+	 * @throws IOException if the channel is closed before the response is read
+	 */
+	static boolean readAppId(ReadableByteChannel channel, ByteBuffer buffer, byte[] appIdFrame) throws IOException {
+		// read response length
+		buffer.clear();
+		buffer.limit(INT_BYTES);
+		readFully(channel, buffer);
+		int length = buffer.getInt(0);
+
+		// null APP_ID is never a valid response
+		if (length != appIdFrame.length - INT_BYTES) {
+			return false;
+		}
+
+		// read response bytes
+		buffer.clear();
+		buffer.limit(length);
+		readFully(channel, buffer);
+
+		for (int i = 0; i < length; i++) {
+			if (buffer.get(i) != appIdFrame[INT_BYTES + i]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Read a delivery status code.
+	 *
+	 * @param channel channel to read from
+	 * @param buffer scratch buffer holding at least 4 bytes
+	 * @return the delivery status
+	 * @throws IOException if the channel is closed before the status is read
+	 * @throws Unique4jException if the status code is unknown
+	 */
+	static DeliveryStatus readStatus(ReadableByteChannel channel, ByteBuffer buffer) throws IOException, Unique4jException {
+		buffer.clear();
+		buffer.limit(INT_BYTES);
+		readFully(channel, buffer);
+
+		DeliveryStatus status = DeliveryStatus.valueOf(buffer.getInt(0));
+		if (status == null) {
+			throw new Unique4jException("Unknown delivery status: " + buffer.getInt(0));
+		}
+
+		return status;
+	}
+
+	/**
+	 * Read the delivery status following the APP_ID frame of a response to a message.<br>
+	 * First instances of versions before 1.6 close the connection instead of reporting a status.
+	 *
+	 * @param channel channel to read from
+	 * @param buffer scratch buffer holding at least 4 bytes
+	 * @return the delivery status, <code>ACCEPTED</code> if the first instance does not report one
+	 * @throws IOException if reading fails
+	 * @throws Unique4jException if the status code is unknown
+	 */
+	static DeliveryStatus readResponseStatus(ReadableByteChannel channel, ByteBuffer buffer) throws IOException, Unique4jException {
+		try {
+			return readStatus(channel, buffer);
+		} catch (EOFException e) {
+			// first instance does not report status
+			return DeliveryStatus.ACCEPTED;
+		}
+	}
+
+	/**
+	 * Write the remaining bytes of a buffer to a channel.
+	 *
+	 * @param channel channel to write to
+	 * @param buffer buffer to drain
+	 * @throws IOException if writing fails
+	 */
+	static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	/**
+	 * Write a length prefixed frame to a channel.
+	 *
+	 * @param channel channel to write to
+	 * @param codec codec providing the frame header
+	 * @param payload message bytes, or null for a null message
+	 * @throws IOException if writing fails
+	 */
+	static void writeFrame(GatheringByteChannel channel, MessageCodec codec, ByteBuffer payload) throws IOException {
+		ByteBuffer[] frame = codec.frame(payload);
+		while (frame[0].hasRemaining() || frame[1].hasRemaining()) {
+			channel.write(frame);
+		}
+	}
+
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * File opened at most once per JVM, shared by all users of its locks.<br><br>
+ *
+ * POSIX record locks belong to the process, and closing any descriptor of a file drops every lock the process holds on it.
+ * Files carrying long held locks are therefore opened once per canonical path and only closed when their last user releases them.
+ * The contents are read and written through the <code>RandomAccessFile</code>, which unlike the channel is not closed by thread interrupts.<br><br>
+ *
+ * A blocking lock on the channel is closed by an interrupt or an aborted wait.
+ * While it is pending, no overlapping lock of this JVM can be held, and aborts are refused while any lock is held through this file.
+ * A closed file is replaced on the next <code>open()</code>.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class SharedFile {
+
+	// open files by canonical path
+	private static final Map<File, SharedFile> FILES = new HashMap<File, SharedFile>();
+
+	// canonical path of the file
+	private final File path;
+
+	// the only RAF object of the file in this JVM
+	private final RandomAccessFile raf;
+
+	// number of users, guarded by FILES
+	private int users;
+
+	// number of locks held through this file, guarded by FILES
+	private int locks;
+
+	private SharedFile(File path, RandomAccessFile raf) {
+		this.path = path;
+		this.raf = raf;
+	}
+
+	/**
+	 * Open a file, creating it if it does not exist. Every call must be paired with <code>release()</code>.
+	 *
+	 * @param file file to open
+	 * @return the shared file
+	 * @throws IOException if the file cannot be opened
+	 */
+	static SharedFile open(File file) throws IOException {
+		return open(file, true);
+	}
+
+	/**
+	 * Open a file if it exists. Every successful call must be paired with <code>release()</code>.
+	 *
+	 * @param file file to open
+	 * @return the shared file, or null if the file does not exist
+	 * @throws IOException if the file cannot be opened
+	 */
+	static SharedFile openExisting(File file) throws IOException {
+		return open(file, false);
+	}
+
+	private static SharedFile open(File file, boolean create) throws IOException {
+		File path = file.getCanonicalFile();
+		synchronized (FILES) {
+			SharedFile shared = FILES.get(path);
+
+			// replace a file closed by an interrupt or an aborted wait
+			if (shared == null || !shared.isOpen()) {
+				if (!create && !path.exists()) {
+					return null;
+				}
+				shared = new SharedFile(path, new RandomAccessFile(path, "rw"));
+				FILES.put(path, shared);
+			}
+
+			shared.users++;
+			return shared;
+		}
+	}
+
+	/**
+	 * Release this file, closing it if this was its last user.
+	 */
+	void release() {
+		synchronized (FILES) {
+			if (--users > 0) {
+				return;
+			}
+
+			if (FILES.get(path) == this) {
+				FILES.remove(path);
+			}
+		}
+
+		try {
+			raf.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+
+	/**
+	 * Close this file at once to abort a blocking lock, unless a lock is held through it.
+	 *
+	 * @return true if the file has been closed
+	 */
+	boolean abort() {
+		synchronized (FILES) {
+			if (locks > 0) {
+				return false;
+			}
+
+			if (FILES.get(path) == this) {
+				FILES.remove(path);
+			}
+
+			try {
+				raf.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Try to lock a region of the file without waiting.
+	 *
+	 * @param position start of the region
+	 * @param size size of the region
+	 * @param shared true for a shared lock, false for an exclusive lock
+	 * @return the lock, or null if another process holds an overlapping lock
+	 * @throws java.nio.channels.OverlappingFileLockException if this JVM holds an overlapping lock
+	 * @throws IOException if the region cannot be locked
+	 */
+	FileLock tryLock(long position, long size, boolean shared) throws IOException {
+		// counted atomically with respect to aborts
+		synchronized (FILES) {
+			FileLock lock = raf.getChannel().tryLock(position, size, shared);
+			if (lock != null) {
+				locks++;
+			}
+			return lock;
+		}
+	}
+
+	/**
+	 * Lock a region of the file, blocking in the kernel until it is available.<br>
+	 * The wait is aborted by <code>abort()</code> or an interrupt, which close the file.
+	 *
+	 * @param position start of the region
+	 * @param size size of the region
+	 * @param shared true for a shared lock, false for an exclusive lock
+	 * @return the lock, or null if the file has been closed just after the lock has been obtained
+	 * @throws java.nio.channels.OverlappingFileLockException if this JVM holds an overlapping lock
+	 * @throws IOException if the region cannot be locked or the wait has been aborted
+	 */
+	FileLock lock(long position, long size, boolean shared) throws IOException {
+		FileLock lock = raf.getChannel().lock(position, size, shared);
+		synchronized (FILES) {
+			if (!isOpen()) {
+				return null;
+			}
+			locks++;
+			return lock;
+		}
+	}
+
+	/**
+	 * Release a lock obtained through this file.
+	 *
+	 * @param lock lock to release
+	 * @throws IOException if the lock cannot be released
+	 */
+	void unlock(FileLock lock) throws IOException {
+		try {
+			lock.release();
+		} finally {
+			synchronized (FILES) {
+				locks--;
+			}
+		}
+	}
+
+	/**
+	 * Check whether this file is still open.
+	 *
+	 * @return false if the file has been closed by an interrupt or an aborted wait
+	 */
+	boolean isOpen() {
+		return raf.getChannel().isOpen();
+	}
+
+	/**
+	 * Read the content at the beginning of the file.
+	 *
+	 * @param limit maximum number of bytes to read
+	 * @return bytes read until the end of the file or the limit
+	 * @throws IOException if the file cannot be read
+	 */
+	synchronized byte[] read(int limit) throws IOException {
+		byte[] buffer = new byte[(int) Math.min(raf.length(), limit)];
+
+		// the file may shrink while reading
+		raf.seek(0);
+		int length = 0;
+		while (length < buffer.length) {
+			int read = raf.read(buffer, length, buffer.length - length);
+			if (read == -1) {
+				break;
+			}
+			length += read;
+		}
+
+		if (length == buffer.length) {
+			return buffer;
+		}
+		byte[] content = new byte[length];
+		System.arraycopy(buffer, 0, content, 0, length);
+		return content;
+	}
+
+	/**
+	 * Replace the content of the file.
+	 *
+	 * @param content new content
+	 * @throws IOException if the file cannot be written
+	 */
+	synchronized void write(byte[] content) throws IOException {
+		raf.seek(0);
+		raf.write(content);
+		raf.setLength(content.length);
+	}
+
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of releasing the lock of the first instance with a deadline.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class TerminationReport {
+
+	// lock has been released or not
+	private final boolean released;
+
+	// messages finished while draining
+	private final long drainedMessages;
+
+	// messages failed at the deadline
+	private final int cancelledMessages;
+
+	// connection threads interrupted at the deadline
+	private final List<Thread> interruptedThreads;
+
+	// time taken to shut down
+	private final long elapsedNanos;
+
+	TerminationReport(boolean released, long drainedMessages, int cancelledMessages, List<Thread> interruptedThreads, long elapsedNanos) {
+		this.released = released;
+		this.drainedMessages = drainedMessages;
+		this.cancelledMessages = cancelledMessages;
+		this.interruptedThreads = Collections.unmodifiableList(interruptedThreads);
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * Check whether the lock has been released.
+	 *
+	 * @return true if this was the first instance and its lock has been released, false otherwise
+	 */
+	public boolean isReleased() {
+		return released;
+	}
+
+	/**
+	 * Check whether everything in flight finished before the deadline.
+	 *
+	 * @return true if no message was cancelled and no thread was interrupted, false otherwise
+	 */
+	public boolean isTerminated() {
+		return cancelledMessages == 0 && interruptedThreads.isEmpty();
+	}
+
+	/**
+	 * Get the number of messages which finished while draining.
+	 *
+	 * @return number of messages finished before the deadline
+	 */
+	public long getDrainedMessages() {
+		return drainedMessages;
+	}
+
+	/**
+	 * Get the number of messages which were failed at the deadline.<br>
+	 * In durable mode these messages are delivered again by the next first instance.
+	 *
+	 * @return number of cancelled messages
+	 */
+	public int getCancelledMessages() {
+		return cancelledMessages;
+	}
+
+	/**
+	 * Get the connection threads which were still running at the deadline and have been interrupted.<br>
+	 * Threads ignoring the interrupt keep running and may keep the JVM alive.
+	 *
+	 * @return interrupted threads
+	 */
+	public List<Thread> getInterruptedThreads() {
+		return interruptedThreads;
+	}
+
+	/**
+	 * Get the time taken to shut down.
+	 *
+	 * @param unit time unit of the result
+	 * @return elapsed time in the given unit
+	 */
+	public long getElapsedTime(TimeUnit unit) {
+		return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public String toString() {
+		return "TerminationReport[released=" + released + ", drained=" + drainedMessages + ", cancelled=" + cancelledMessages
+				+ ", interrupted=" + interruptedThreads.size() + ", elapsed=" + getElapsedTime(TimeUnit.MILLISECONDS) + "ms]";
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Transport carrying messages from subsequent instances to the first instance.<br><br>
+ *
+ * The first instance listens on a port chosen according to its port policy, which it publishes through its lock strategy.
+ * Subsequent instances connect to the published port.
+ * The default transport is <code>LoopbackTransport</code>. Transports can be swapped with <code>Unique4j.setTransport()</code>.<br><br>
+ *
+ * Implementations must be safe for use by multiple threads.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public interface Transport {
+
+	/**
+	 * Listen on a port.
+	 *
+	 * @param port port to listen on
+	 * @return the bound server socket channel
+	 * @throws IOException if the port is not available
+	 */
+	ServerSocketChannel listen(int port) throws IOException;
+
+	/**
+	 * Connect to the first instance listening on a port.
+	 *
+	 * @param port port of the first instance
+	 * @return the connected socket channel
+	 * @throws IOException if the connection fails
+	 */
+	SocketChannel connect(int port) throws IOException;
+
+}
@@ -0,0 +1,2819 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * The <code>Unique4j</code> class is the primary logical entry point to the library.<br>
+ * It allows to create an application lock or free it and send and receive messages between first and subsequent instances.<br><br>
+ * 
+ * <pre>
+ *	// unique application ID
+ *	String APP_ID = "in.pratanumandal.unique4j-mlsdvo-20191511-#j.6";
+ *	
+ *	// create Unique4j instance
+ *	Unique4j unique = new Unique4j(APP_ID) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&#64;Override
+ *	&nbsp;&nbsp;&nbsp;&nbsp;protected void receiveMessage(String message) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;// print received message (timestamp)
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;System.out.println(message);
+ *	&nbsp;&nbsp;&nbsp;&nbsp;}
+ *	&nbsp;&nbsp;&nbsp;&nbsp;
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&#64;Override
+ *	&nbsp;&nbsp;&nbsp;&nbsp;protected String sendMessage() {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;// send timestamp as message
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;Timestamp ts = new Timestamp(new Date().getTime());
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;return "Another instance launch attempted: " + ts.toString();
+ *	&nbsp;&nbsp;&nbsp;&nbsp;}
+ *	};
+ *	
+ *	// try to obtain lock
+ *	try {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;unique.acquireLock();
+ *	} catch (Unique4jException e) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;e.printStackTrace();
+ *	}
+ *	
+ *	...
+ *	
+ *	// try to free the lock before exiting program
+ *	try {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;unique.freeLock();
+ *	} catch (Unique4jException e) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;e.printStackTrace();
+ *	}
+ * </pre>
+ * 
+ * @author Pratanu Mandal
+ * @since 1.3
+ *
+ */
+public abstract class Unique4j {
+	
+	// starting position of port check
+	private static final int PORT_START = 3000;
+	
+	// time to wait for a first instance which has stopped listening to release its lock
+	private static final long RELEASE_GRACE = TimeUnit.SECONDS.toNanos(1);
+	
+	// timer running lease renewals and heartbeats, created on first use
+	private static Timer timer;
+	
+	// source of handover tokens
+	private static final SecureRandom RANDOM = new SecureRandom();
+	
+	// position of the reader lock regions in the readers file
+	private static final long READER_POSITION = 0;
+	
+	// number of reader lock regions, one per reader in a JVM
+	private static final int READER_SLOTS = 1 << 16;
+	
+	// serializes reader locks and reader probes in this JVM
+	private static final Object READERS_MONITOR = new Object();
+	
+	// next reader lock region to try in this JVM
+	private static int nextReaderSlot;
+	
+	/**
+	 * Default maximum size of a single message in bytes accepted by the first instance.
+	 * 
+	 * @since 1.6
+	 */
+	public static final int DEFAULT_MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+	
+	/**
+	 * Default number of message bytes the first instance may hold in memory across all connections.
+	 * 
+	 * @since 1.6
+	 */
+	public static final int DEFAULT_MEMORY_BUDGET = 64 * 1024 * 1024;
+	
+	/**
+	 * Default duration in milliseconds of the lease held by the leader of a cluster.<br>
+	 * It suits shared directories which return stale contents for at most 2.5 seconds.
+	 * 
+	 * @since 1.6
+	 */
+	public static final long DEFAULT_LEASE_DURATION = 10000;
+	
+	/**
+	 * Unique string representing the application ID.<br><br>
+	 * 
+	 * The APP_ID must be as unique as possible.
+	 * Avoid generic names like "my_app_id" or "hello_world".<br>
+	 * A good strategy is to use the entire package name (group ID + artifact ID) along with some random characters.
+	 */
+	public final String APP_ID;
+	
+	// auto exit from application or not
+	private final boolean AUTO_EXIT;
+	
+	// lock server port or port policy
+	private final int PORT;
+	
+	// port policy
+	private final PortPolicy PORT_POLICY;
+	
+	// actual lock server port
+	private int port;
+	
+	// pre-encoded response frame containing APP_ID
+	private final byte[] appIdFrame;
+	
+	// use direct buffers or not
+	private boolean directBuffers = true;
+	
+	// pool of reusable message buffers and coders
+	private MessageCodecPool codecPool;
+	
+	// maximum size of a single message
+	private int maxMessageSize = DEFAULT_MAX_MESSAGE_SIZE;
+	
+	// maximum number of message bytes in flight
+	private int memoryBudget = DEFAULT_MEMORY_BUDGET;
+	
+	// permits for message bytes in flight
+	private Semaphore budget;
+	
+	// journal messages before acknowledging them or not
+	private boolean durable;
+	
+	// when to acknowledge messages
+	private DeliveryMode deliveryMode = DeliveryMode.ON_RECEIPT;
+	
+	// publish the first instance in the machine-wide registry or not
+	private boolean registered;
+	
+	// registry slot of this first instance
+	private int registrySlot = -1;
+	
+	// updates the registry heartbeat of this first instance
+	private TimerTask heartbeat;
+	
+	// delivery status of the message sent by this subsequent instance
+	private DeliveryStatus deliveryStatus;
+	
+	// journal of received messages in durable mode
+	private MessageJournal journal;
+	
+	// codec used while the subsequent instance prepares its message
+	private MessageCodec sendCodec;
+	
+	// lock server socket channel
+	private ServerSocketChannel server;
+	
+	// directory holding the lock files and other shared files
+	private File lockDirectory = LockDirectories.getDefault();
+	
+	// strategy electing the first instance and publishing its port
+	private LockStrategy lockStrategy = new FileLockStrategy(lockDirectory);
+	
+	// election lock held by the first instance
+	private LockStrategy.Lock election;
+	
+	// transport carrying messages to the first instance
+	private Transport transport = new LoopbackTransport();
+	
+	// guards messages in flight and connection threads
+	private final Object inFlightLock = new Object();
+	
+	// received messages not yet finished
+	private final Set<Acknowledgement> inFlight = new HashSet<Acknowledgement>();
+	
+	// threads handling connections from subsequent instances
+	private final Set<Thread> handlers = new HashSet<Thread>();
+	
+	// keep-alive connections waiting for their next message
+	private final Set<SocketChannel> idleSessions = new HashSet<SocketChannel>();
+	
+	// connections subscribed to broadcasts
+	private final List<SocketChannel> subscribers = new ArrayList<SocketChannel>();
+	
+	// number of messages finished so far
+	private long finished;
+	
+	// first instance is shutting down
+	private volatile boolean stopping;
+	
+	// lock is being handed over to a successor
+	private boolean handingOver;
+	
+	// secret published in the lock file which a successor must present to take over, 0 if handover is not accepted
+	private volatile long handoverToken;
+	
+	// readers file RAF object of a reader
+	private SharedFile readerFile;
+	
+	// shared lock of a reader
+	private FileLock readerLock;
+	
+	// lease of the cluster leader, null outside cluster mode
+	private ClusterLease lease;
+	
+	// host on which this instance accepts messages as cluster leader
+	private String advertisedHost;
+	
+	// host of the cluster leader, null for the loopback address
+	private String leaderHost;
+	
+	// fencing token and secret of the lease of the cluster leader, presented with every message
+	private long leaderToken;
+	private long leaderSecret;
+	
+	// renews the lease while this instance is the cluster leader
+	private TimerTask leaseRenewal;
+	
+	// maximum number of first instances
+	private int poolSize = 1;
+	
+	// pool slot of this instance, -1 for the application-wide singleton
+	private int poolSlot = -1;
+	
+	// load counters of the first instances of the pool
+	private PoolTable poolTable;
+	
+	// partition key of a keyed singleton, null for the application-wide singleton
+	private String key;
+	
+	// hash of the partition key
+	private long keyHash;
+	
+	// index of the first instances of keyed singletons
+	private KeyIndex keyIndex;
+	
+	// share the process-wide host instead of opening a server socket
+	private boolean hosted;
+	
+	// let the host drive the server socket instead of starting threads
+	private boolean embedded;
+
+	/**
+	 * Parameterized constructor.<br>
+	 * This constructor configures to automatically exit the application for subsequent instances.<br><br>
+	 * 
+	 * The APP_ID must be as unique as possible.
+	 * Avoid generic names like "my_app_id" or "hello_world".<br>
+	 * A good strategy is to use the entire package name (group ID + artifact ID) along with some random characters.
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 */
+	public Unique4j(final String APP_ID) {
+		this(APP_ID, true, PORT_START, PortPolicy.DYNAMIC);
+	}
+	
+	/**
+	 * Parameterized constructor.<br>
+	 * This constructor allows to explicitly specify the exit strategy for subsequent instances.<br><br>
+	 * 
+	 * The APP_ID must be as unique as possible.
+	 * Avoid generic names like "my_app_id" or "hello_world".<br>
+	 * A good strategy is to use the entire package name (group ID + artifact ID) along with some random characters.
+	 * 
+	 * @since 1.2
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @param AUTO_EXIT If true, automatically exit the application for subsequent instances
+	 */
+	public Unique4j(final String APP_ID, final boolean AUTO_EXIT) {
+		this(APP_ID, AUTO_EXIT, PORT_START, PortPolicy.DYNAMIC);
+	}
+	
+	/**
+	 * Parameterized constructor.<br>
+	 * This constructor allows to explicitly specify the exit strategy for subsequent instances.<br><br>
+	 * 
+	 * The APP_ID must be as unique as possible.
+	 * Avoid generic names like "my_app_id" or "hello_world".<br>
+	 * A good strategy is to use the entire package name (group ID + artifact ID) along with some random characters.
+	 * 
+	 * @since 1.5
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @param PORT Port (or starting port in case of dynamic port policy) of the server socket
+	 * @param PORT_POLICY Port policy to use - STATIC or DYNAMIC
+	 */
+	public Unique4j(final String APP_ID, final int PORT, final PortPolicy PORT_POLICY) {
+		this(APP_ID, true, PORT, PORT_POLICY);
+	}
+	
+	/**
+	 * Parameterized constructor.<br>
+	 * This constructor allows to explicitly specify the exit strategy for subsequent instances.<br><br>
+	 * 
+	 * The APP_ID must be as unique as possible.
+	 * Avoid generic names like "my_app_id" or "hello_world".<br>
+	 * A good strategy is to use the entire package name (group ID + artifact ID) along with some random characters.
+	 * 
+	 * @since 1.5
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @param AUTO_EXIT If true, automatically exit the application for subsequent instances
+	 * @param PORT Port (or starting port in case of dynamic port policy) of the server socket
+	 * @param PORT_POLICY Port policy to use - STATIC or DYNAMIC
+	 */
+	public Unique4j(final String APP_ID, final boolean AUTO_EXIT, final int PORT, final PortPolicy PORT_POLICY) {
+		this.APP_ID = APP_ID;
+		this.AUTO_EXIT = AUTO_EXIT;
+		this.PORT = PORT;
+		this.port = PORT;
+		this.PORT_POLICY = PORT_POLICY;
+		this.appIdFrame = MessageCodec.encodeFrame(APP_ID);
+	}
+	
+	/**
+	 * Try to obtain lock. If not possible, send data to first instance.
+	 * 
+	 * @deprecated Use <code>acquireLock()</code> instead.
+	 * @throws Unique4jException throws Unique4jException if it is unable to start a server or connect to server
+	 */
+	@Deprecated
+	public void lock() throws Unique4jException {
+		acquireLock();
+	}
+	
+	/**
+	 * Try to obtain lock. If not possible, send data to first instance.
+	 * 
+	 * @since 1.2
+	 * 
+	 * @return true if able to acquire lock, false otherwise
+	 * @throws Unique4jException throws Unique4jException if it is unable to start a server or connect to server
+	 */
+	public boolean acquireLock() throws Unique4jException {
+		initialize();
+		key = null;
+		poolSlot = -1;
+		
+		// elect the leader of the cluster
+		if (lease != null) {
+			return acquireClusterLock();
+		}
+		
+		// elect one of several first instances
+		if (poolSize > 1) {
+			return acquirePoolLock();
+		}
+		
+		// try to obtain port number from registry or lock file
+		if (PORT_POLICY == PortPolicy.DYNAMIC) {
+			Unique4jRegistry.Entry entry = registered ? Unique4jRegistry.resolve(APP_ID) : null;
+			port = (entry != null) ? entry.getPort() : readPortFromLockFile();
+		}
+		
+		if (port == -1) {
+			// failed to fetch port number
+			// try to start server
+			startServer();
+		}
+		else {
+			// port number fetched from lock file
+			// try to start client
+			doClient();
+		}
+		
+		return (server != null);
+	}
+	
+	/**
+	 * Try to obtain the lock in the given mode.<br><br>
+	 * 
+	 * In exclusive mode this is the same as <code>acquireLock()</code>.
+	 * In shared mode this instance becomes a reader: it takes a shared lock which any number of readers hold at the same time,
+	 * and runs independently without starting a server or sending a message.
+	 * Readers run alongside the first instance, which acts as the single writer.
+	 * The writer can check for readers with <code>hasReaders()</code> and notify them with <code>broadcast()</code>,
+	 * to which readers listen through <code>Unique4jSubscription</code>.<br><br>
+	 * 
+	 * This is useful for read-heavy tools which can run many read-only instances but only one instance with write access.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param mode lock mode
+	 * @return true if able to acquire lock, false otherwise
+	 * @throws Unique4jException throws Unique4jException if it is unable to start a server, connect to server or lock the readers file
+	 */
+	public boolean acquireLock(LockMode mode) throws Unique4jException {
+		if (mode == LockMode.EXCLUSIVE) {
+			return acquireLock();
+		}
+		
+		return acquireReadLock();
+	}
+	
+	// take a shared lock on the readers file
+	private synchronized boolean acquireReadLock() throws Unique4jException {
+		// already a reader
+		if (readerLock != null) {
+			return true;
+		}
+		
+		// readers file
+		File file = new File(lockDirectory, APP_ID + ".readers");
+		
+		try {
+			// all readers of this JVM share the readers file, closing another descriptor would drop their locks
+			SharedFile shared = SharedFile.open(file);
+			FileLock lock = null;
+			try {
+				while (true) {
+					// the writer of another process is probing for readers
+					boolean probed = false;
+					
+					synchronized (READERS_MONITOR) {
+						// readers in this JVM need distinct regions, readers in different processes may share them
+						for (int i = 0; i < READER_SLOTS && lock == null && !probed; i++) {
+							int slot = nextReaderSlot;
+							try {
+								lock = shared.tryLock(READER_POSITION + slot, 1, true);
+								probed = (lock == null);
+							} catch (OverlappingFileLockException e) {
+								// held by another reader in this JVM
+							}
+							
+							// retry the same region after a probe
+							if (!probed) {
+								nextReaderSlot = (slot + 1) % READER_SLOTS;
+							}
+						}
+					}
+					
+					if (!probed) {
+						break;
+					}
+					
+					// never block in the kernel, an interrupt would close the shared file
+					Thread.sleep(1);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new Unique4jException(e);
+			} finally {
+				if (lock == null) shared.release();
+			}
+			
+			if (lock == null) {
+				throw new Unique4jException("Too many readers in this JVM");
+			}
+			
+			readerFile = shared;
+			readerLock = lock;
+			return true;
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	// release the shared lock of a reader, true if it was held
+	private boolean releaseReadLock() throws IOException {
+		if (readerLock == null) {
+			return false;
+		}
+		
+		try {
+			readerFile.unlock(readerLock);
+		} finally {
+			// the readers file is closed by the last reader of this JVM
+			readerFile.release();
+			readerLock = null;
+			readerFile = null;
+		}
+		return true;
+	}
+	
+	/**
+	 * Check whether any instance holds the lock in shared mode.<br>
+	 * Readers are probed with a short lived lock, during which new readers wait.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @return true if there is at least one reader
+	 * @throws Unique4jException throws Unique4jException if it is unable to lock the readers file
+	 */
+	public boolean hasReaders() throws Unique4jException {
+		// readers file
+		File file = new File(lockDirectory, APP_ID + ".readers");
+		
+		try {
+			// probe through the readers file shared with the readers of this JVM
+			SharedFile shared = SharedFile.openExisting(file);
+			
+			// no reader has ever run
+			if (shared == null) {
+				return false;
+			}
+			
+			try {
+				synchronized (READERS_MONITOR) {
+					FileLock probe = shared.tryLock(READER_POSITION, READER_SLOTS, false);
+					if (probe == null) {
+						return true;
+					}
+					
+					shared.unlock(probe);
+					return false;
+				}
+			} catch (OverlappingFileLockException e) {
+				// held by a reader in this JVM
+				return true;
+			} finally {
+				shared.release();
+			}
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	// try to become the leader of the cluster, otherwise send data to the leader
+	private boolean acquireClusterLock() throws Unique4jException {
+		if (hosted) {
+			throw new Unique4jException("Cluster mode is not supported by hosted instances");
+		}
+		
+		leaderHost = null;
+		
+		ClusterLease.Lease current;
+		try {
+			current = lease.read();
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+		
+		if (current == null || !current.isLive()) {
+			// no live leader
+			// try to start server
+			startServer();
+		}
+		else {
+			// leader fetched from lease file
+			// try to start client
+			leaderHost = current.host;
+			leaderToken = current.token;
+			leaderSecret = current.secret;
+			port = current.port;
+			doClient();
+		}
+		
+		return (server != null);
+	}
+	
+	// try to obtain a free slot of the pool, otherwise send data to the least loaded first instance
+	private boolean acquirePoolLock() throws Unique4jException {
+		if (hosted) {
+			throw new Unique4jException("Instance pools are not supported by hosted instances");
+		}
+		
+		// open load counters shared by all slots
+		try {
+			poolTable = PoolTable.open(new File(lockDirectory, APP_ID + ".pool"), poolSize);
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+		
+		// try to take a free slot
+		for (poolSlot = 0; poolSlot < poolSize; poolSlot++) {
+			if (lockElection()) {
+				startLockedServer(null);
+				return true;
+			}
+		}
+		
+		// all slots are taken, use the least loaded first instance
+		poolSlot = poolTable.leastLoaded(poolSize);
+		port = readPortFromLockFile();
+		
+		if (port == -1) {
+			// first instance of the slot has just released it
+			// try to start server
+			startServer();
+		}
+		else {
+			// port number fetched from lock file of the slot
+			// try to start client
+			doClient();
+		}
+		
+		return (server != null);
+	}
+	
+	/**
+	 * Try to obtain the lock of a partition key. If not possible, send data to the first instance of the key.<br><br>
+	 * 
+	 * Keyed singletons allow one first instance per key instead of one per application, for example one per workspace directory.
+	 * The first instances of all keys of an application share one compact index file in the lock directory,
+	 * which subsequent instances use to find the first instance of their key with a single lookup.<br><br>
+	 * 
+	 * Keyed singletons require the dynamic port policy. They cannot be hosted, registered or handed over.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param key partition key
+	 * @return true if able to acquire the lock of the key, false otherwise
+	 * @throws Unique4jException throws Unique4jException if it is unable to start a server or connect to server
+	 */
+	public boolean acquireLock(String key) throws Unique4jException {
+		if (key == null) {
+			throw new IllegalArgumentException("Key must not be null");
+		}
+		if (PORT_POLICY != PortPolicy.DYNAMIC) {
+			throw new Unique4jException("Keyed singletons require dynamic port policy");
+		}
+		if (hosted) {
+			throw new Unique4jException("Keyed singletons are not supported by hosted instances");
+		}
+		if (lease != null) {
+			throw new Unique4jException("Keyed singletons are not supported in cluster mode");
+		}
+		
+		initialize();
+		this.key = key;
+		this.keyHash = Protocol.hash(key);
+		this.poolSlot = -1;
+		
+		// open index shared by all keys of this application
+		try {
+			keyIndex = KeyIndex.open(new File(lockDirectory, APP_ID + ".keys"));
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+		
+		// try to obtain port number of the key from index
+		port = keyIndex.lookup(keyHash);
+		
+		if (port == -1) {
+			// no first instance of the key
+			// try to start server
+			startServer();
+		}
+		else {
+			// port number fetched from index
+			// try to start client
+			doClient();
+		}
+		
+		return (server != null);
+	}
+	
+	/**
+	 * Wait until this instance becomes the first instance.<br><br>
+	 * 
+	 * If there is no first instance, this instance becomes the first instance immediately.
+	 * Otherwise the calling thread blocks on the lock file without polling until the first instance releases its lock or dies,
+	 * and then takes over as the first instance. No message is sent to the current first instance.<br><br>
+	 * 
+	 * This allows a subsequent instance to act as a hot standby instead of exiting.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param timeout maximum time to wait
+	 * @param unit time unit of the timeout argument
+	 * @return true if this instance became the first instance, false if the timeout elapsed
+	 * @throws Unique4jException throws Unique4jException if it is unable to start a server or the thread is interrupted
+	 */
+	public boolean awaitLock(long timeout, TimeUnit unit) throws Unique4jException {
+		if (lease != null) {
+			throw new Unique4jException("Waiting for the lock is not supported in cluster mode");
+		}
+		
+		initialize();
+		key = null;
+		poolSlot = -1;
+		
+		// try to become the first instance
+		if (!awaitElection(System.nanoTime() + unit.toNanos(timeout))) {
+			return false;
+		}
+		
+		startLockedServer(null);
+		return true;
+	}
+	
+	/**
+	 * Take over the lock from the running first instance without a gap in availability.<br><br>
+	 * 
+	 * This instance starts listening first and asks the first instance to hand over.
+	 * The first instance points the lock file to this instance, stops accepting connections,
+	 * waits for at most half of the timeout for messages in flight to finish and then releases its lock.
+	 * Messages left unfinished in its journal are replayed by this instance in durable mode.
+	 * Subsequent instances connecting during the handover follow the lock file to this instance.<br><br>
+	 * 
+	 * The first instance only hands over to a successor presenting the secret token published in its lock file,
+	 * so the successor must be able to read the lock file.<br><br>
+	 * 
+	 * If there is no first instance, this instance becomes the first instance immediately.
+	 * This is useful for rolling restarts of the first instance, e.g. after a self update.
+	 * Handover requires the dynamic port policy.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param timeout maximum time to wait
+	 * @param unit time unit of the timeout argument
+	 * @return true if this instance became the first instance, false if the timeout elapsed
+	 * @throws Unique4jException throws Unique4jException if the first instance refuses the handover or it is unable to start a server
+	 */
+	public boolean takeOverLock(long timeout, TimeUnit unit) throws Unique4jException {
+		if (PORT_POLICY != PortPolicy.DYNAMIC) {
+			throw new Unique4jException("Handover requires dynamic port policy");
+		}
+		if (hosted) {
+			throw new Unique4jException("Handover is not supported by hosted instances");
+		}
+		if (lease != null) {
+			throw new Unique4jException("Handover is not supported in cluster mode");
+		}
+		
+		initialize();
+		key = null;
+		poolSlot = -1;
+		
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		
+		// try to connect to the first instance
+		String endpoint = readEndpointFromLockFile();
+		port = Protocol.parsePort(endpoint);
+		SocketChannel socket = (port == -1) ? null : connect();
+		if (socket == null) {
+			// no first instance to take over from
+			return awaitLock(timeout, unit);
+		}
+		
+		// start listening before the lock file points to this instance
+		// connections wait in the backlog until this instance is elected
+		ServerSocketChannel successor = openDynamicServer();
+		
+		MessageCodec codec = codecPool.acquire();
+		boolean elected = false;
+		try {
+			// ask the first instance to hand over
+			ByteBuffer request = codec.control(Protocol.INT_BYTES + 1 + appIdFrame.length + Protocol.INT_BYTES + 2 * Protocol.LONG_BYTES);
+			request.putInt(Protocol.MAGIC);
+			request.put(Protocol.HANDOVER);
+			request.put(appIdFrame);
+			request.putInt(successor.socket().getLocalPort());
+			request.putLong(TimeUnit.NANOSECONDS.toMillis(Math.max(0, deadline - System.nanoTime())) / 2);
+			request.putLong(Protocol.parseToken(endpoint));
+			request.flip();
+			Protocol.writeFully(socket, request);
+			
+			// read response from the first instance
+			if (!Protocol.readAppId(socket, codec.control(appIdFrame.length), appIdFrame)) {
+				throw new Unique4jException("Handover refused by first instance");
+			}
+			DeliveryStatus status = Protocol.readResponseStatus(socket, codec.control(Protocol.INT_BYTES));
+			if (status != DeliveryStatus.ACCEPTED) {
+				throw new Unique4jException("Handover refused by first instance: " + status);
+			}
+			
+			// wait for the first instance to release its lock
+			elected = awaitElection(deadline);
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// return buffers to pool
+			codecPool.release(codec);
+			
+			try {
+				// close socket
+				socket.close();
+				
+				// stop listening if not elected
+				if (!elected) {
+					successor.close();
+				}
+			} catch (IOException e) {
+				throw new Unique4jException(e);
+			}
+		}
+		
+		startLockedServer(successor);
+		return true;
+	}
+	
+	// try to obtain the election lock until the deadline
+	private boolean awaitElection(long deadline) throws Unique4jException {
+		try {
+			election = lockStrategy.lock(lockName(), deadline - System.nanoTime());
+			return election != null;
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	// create resources shared by first and subsequent instances
+	private void initialize() {
+		// create pool of message buffers
+		if (codecPool == null) {
+			codecPool = new MessageCodecPool(MessageCodecPool.DEFAULT_SIZE, MessageCodecPool.DEFAULT_CAPACITY, directBuffers);
+		}
+		
+		// create memory budget for messages in flight
+		if (budget == null) {
+			budget = new Semaphore(memoryBudget);
+		}
+	}
+	
+	// start the server
+	private void startServer() throws Unique4jException {
+		// keyed singletons are elected through the index
+		if (key != null) {
+			startKeyedServer();
+			return;
+		}
+		
+		// cluster leaders are elected through the lease
+		if (lease != null) {
+			startClusterServer();
+			return;
+		}
+		
+		// try to obtain election lock
+		// allow a first instance which is releasing its lock to finish
+		if (!awaitElection(System.nanoTime() + RELEASE_GRACE)) {
+			throw new Unique4jException("Failed to obtain file lock");
+		}
+		
+		startLockedServer(null);
+	}
+	
+	// start the server for a partition key, or connect to the first instance of the key elected meanwhile
+	private void startKeyedServer() throws Unique4jException {
+		// listen before the index points to this instance
+		ServerSocketChannel bound = openDynamicServer();
+		
+		int elected;
+		try {
+			elected = keyIndex.claim(keyHash, bound.socket().getLocalPort());
+		} catch (IOException e) {
+			try {
+				bound.close();
+			} catch (IOException ex) {
+				handleException(new Unique4jException(ex));
+			}
+			throw new Unique4jException(e);
+		}
+		
+		if (elected == -1) {
+			startLockedServer(bound);
+			return;
+		}
+		
+		try {
+			bound.close();
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+		
+		// another instance has won the election
+		if (elected == port) {
+			throw new Unique4jException("Failed to obtain key lock");
+		}
+		port = elected;
+		doClient();
+	}
+	
+	// start the server of the cluster leader, or connect to the leader elected meanwhile
+	private void startClusterServer() throws Unique4jException {
+		// listen on the advertised address before the lease points to this instance
+		ServerSocketChannel bound = openClusterServer();
+		
+		boolean elected = false;
+		try {
+			elected = lease.acquire(advertisedHost, bound.socket().getLocalPort());
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			if (!elected) {
+				try {
+					bound.close();
+				} catch (IOException e) {
+					handleException(new Unique4jException(e));
+				}
+			}
+		}
+		
+		if (elected) {
+			startLockedServer(bound);
+			return;
+		}
+		
+		// another instance has won the election
+		if (!resolveLeader()) {
+			throw new Unique4jException("Failed to obtain cluster lease");
+		}
+		doClient();
+	}
+	
+	// start the server with the election lock held, using an already bound server socket if any
+	private void startLockedServer(ServerSocketChannel bound) throws Unique4jException {
+		// try to create server
+		if (hosted) {
+			// use the server socket of the shared host
+			server = Unique4jHost.acquire(this);
+			port = server.socket().getLocalPort();
+		}
+		else if (bound != null) {
+			// use server socket bound before the election
+			server = bound;
+			port = bound.socket().getLocalPort();
+		}
+		else if (PORT_POLICY == PortPolicy.DYNAMIC) {
+			// use dynamic port policy
+			server = openDynamicServer();
+			port = server.socket().getLocalPort();
+		}
+		else {
+			// use static port policy
+			port = PORT;
+			try {
+				server = transport.listen(port);
+			} catch (IOException e) {
+				unlockElection(false);
+				throw new Unique4jException(e);
+			}
+		}
+		
+		boolean started = false;
+		try {
+			// keyed singletons have published their port in the index, cluster leaders in the lease
+			if (key == null && lease == null) {
+				// try to write port to lock file
+				writePortToLockFile(port);
+			
+				// publish port in the registry
+				if (registered && poolSlot == -1) {
+					register();
+				}
+			}
+			
+			// start without load, a previous first instance of the slot may have died with messages in flight
+			if (poolSlot != -1) {
+				poolTable.publish(poolSlot, 0);
+			}
+			
+			// keep the lease while this instance is the cluster leader
+			if (lease != null) {
+				leaderHost = null;
+				scheduleLeaseRenewal();
+			}
+			
+			// open journal in durable mode
+			if (durable) {
+				// journal of a keyed singleton is named after the hash of its key
+				String name = (key == null) ? lockName() : APP_ID + "-" + Long.toHexString(keyHash);
+				try {
+					journal = MessageJournal.open(new File(lockDirectory, name + ".journal"), MessageJournal.DEFAULT_CAPACITY);
+				} catch (IOException e) {
+					throw new Unique4jException(e);
+				}
+			}
+			
+			started = true;
+		} finally {
+			// give up the use of the shared host if the first instance has failed to start
+			if (!started && hosted) {
+				server = null;
+				try {
+					Unique4jHost.release(APP_ID, this);
+				} catch (IOException e) {
+					handleException(new Unique4jException(e));
+				}
+				
+				// let another instance become the first instance
+				try {
+					unlockElection(true);
+				} catch (Unique4jException e) {
+					handleException(e);
+				}
+			}
+		}
+		
+		// server created successfully; this is the first instance
+		stopping = false;
+		final ServerSocketChannel server = this.server;
+		
+		// the host accepts connections on its own thread
+		if (hosted) {
+			Unique4jHost.register(APP_ID, this);
+			
+			// deliver messages left pending by a previous first instance
+			if (journal != null) {
+				new Thread("Unique4j-" + APP_ID) {
+					@Override
+					public void run() {
+						replayJournal();
+					}
+				}.start();
+			}
+			return;
+		}
+		
+		// the host accepts connections on its own event loop
+		if (embedded) {
+			try {
+				server.configureBlocking(false);
+			} catch (IOException e) {
+				throw new Unique4jException(e);
+			}
+			
+			// deliver messages left pending by a previous first instance
+			if (journal != null) {
+				replayJournal();
+			}
+			return;
+		}
+		
+		// keep listening for data from other instances
+		Thread thread = new Thread("Unique4j-" + APP_ID) {
+			@Override
+			public void run() {
+				// deliver messages left pending by a previous first instance
+				if (journal != null) {
+					replayJournal();
+				}
+				
+				// pause after consecutive failures
+				long backoff = 0;
+				
+				while (server.isOpen()) {
+					try {
+						// establish connection
+						final SocketChannel socket = server.accept();
+						backoff = 0;
+						
+						// handle socket on a different thread to allow parallel connections
+						Thread thread = new Thread("Unique4j-" + APP_ID + "-handler") {
+							@Override
+							public void run() {
+								try {
+									handleConnection(socket, (byte) 0);
+								} finally {
+									// stop tracking this thread
+									synchronized (inFlightLock) {
+										handlers.remove(this);
+										inFlightLock.notifyAll();
+									}
+								}
+							}
+						};
+						
+						// track socket thread until it finishes
+						synchronized (inFlightLock) {
+							handlers.add(thread);
+						}
+						
+						// start socket thread
+						thread.start();
+					} catch (ClosedChannelException e) {
+						if (server.isOpen()) {
+							handleException(new Unique4jException(e));
+						}
+					} catch (IOException e) {
+						handleException(new Unique4jException(e));
+						
+						// keep accepting once the failure may have passed
+						try {
+							backoff = Protocol.backOff(backoff);
+						} catch (InterruptedException ex) {
+							return;
+						}
+					}
+				}
+			}
+		};
+		
+		thread.start();
+	}
+	
+	// open server socket channel on the first free port starting from PORT
+	private ServerSocketChannel openDynamicServer() {
+		int port = PORT;
+		while (true) {
+			try {
+				return transport.listen(port);
+			} catch (IOException e) {
+				port++;
+			}
+		}
+	}
+	
+	// open server socket channel on the advertised address on the first free port starting from PORT
+	private ServerSocketChannel openClusterServer() throws Unique4jException {
+		InetAddress address;
+		try {
+			address = InetAddress.getByName(advertisedHost);
+			if (!address.isLoopbackAddress() && NetworkInterface.getByInetAddress(address) == null) {
+				throw new Unique4jException("Advertised host is not an address of this host: " + advertisedHost);
+			}
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+		
+		int port = PORT;
+		while (true) {
+			ServerSocketChannel channel = null;
+			try {
+				channel = ServerSocketChannel.open();
+				channel.socket().bind(new InetSocketAddress(address, port), 0);
+				return channel;
+			} catch (IOException e) {
+				try {
+					if (channel != null) channel.close();
+				} catch (IOException ex) {
+					// ignore
+				}
+				port++;
+			}
+		}
+	}
+	
+	// renew the lease of the cluster leader, giving up the lock once another instance may have taken the lease over
+	private void scheduleLeaseRenewal() {
+		final long interval = lease.getRenewInterval();
+		leaseRenewal = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					String lost = null;
+					try {
+						if (!lease.renew()) {
+							lost = "Cluster lease lost";
+						}
+					} catch (IOException e) {
+						handleException(new Unique4jException(e));
+						
+						// try again with the next renewal unless the lease would expire before it
+						if (System.currentTimeMillis() + interval >= lease.getExpiry()) {
+							lost = "Cluster lease expired";
+						}
+					}
+					
+					if (lost != null && !stopping) {
+						cancel();
+						handleException(new Unique4jException(lost));
+						releaseLock();
+					}
+				} catch (Unique4jException e) {
+					handleException(e);
+				}
+			}
+		};
+		
+
+		getTimer().schedule(leaseRenewal, interval, interval);
+	}
+	
+	// handle a connection whose routing header has been read by the host
+	void handleRouted(SocketChannel socket, byte type) {
+		// track the host thread like a connection thread
+		Thread thread = Thread.currentThread();
+		synchronized (inFlightLock) {
+			if (stopping) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					handleException(new Unique4jException(e));
+				}
+				return;
+			}
+			handlers.add(thread);
+		}
+		
+		try {
+			handleConnection(socket, type);
+		} finally {
+			// stop tracking this thread
+			synchronized (inFlightLock) {
+				handlers.remove(thread);
+				inFlightLock.notifyAll();
+			}
+		}
+	}
+	
+	// handle a single connection from a subsequent instance, type is 0 unless the control frame header has been read
+	private void handleConnection(SocketChannel socket, byte type) {
+		MessageCodec codec = codecPool.acquire();
+		
+		// owns codec, socket and reserved budget once created
+		Acknowledgement acknowledgement = null;
+		
+		// socket kept open beyond this thread
+		boolean retained = false;
+		
+		try {
+			// read message length from client
+			int length = (type == 0) ? Protocol.readInt(socket, codec) : Protocol.MAGIC;
+			
+			// the cluster leader only accepts messages presenting the credentials of its lease
+			if (lease != null) {
+				if (length != Protocol.MAGIC || readControlType(socket, codec) != Protocol.CLUSTER || !readLeaseCredentials(socket, codec)) {
+					return;
+				}
+				
+				// read length of the message
+				length = Protocol.readInt(socket, codec);
+			}
+			else if (length == Protocol.MAGIC) {
+				// handle control frames
+				if (type == 0) {
+					// ignore control frames from other applications
+					type = readControlType(socket, codec);
+					if (type == 0) {
+						return;
+					}
+				}
+				
+				if (type != Protocol.ROUTED) {
+					retained = handleControl(socket, codec, type);
+					return;
+				}
+				
+				// read length of the routed message
+				length = Protocol.readInt(socket, codec);
+			}
+			
+			// ignore invalid frames
+			if (length < -1) {
+				return;
+			}
+			
+			// reserve resources for the message
+			acknowledgement = admitMessage(socket, codec, length, false);
+			
+			// read message and perform user action on it
+			if (acknowledgement != null) {
+				deliverMessage(socket, codec, readMessage(socket, codec, length), acknowledgement);
+			}
+		} catch (IOException e) {
+			// connections cancelled by a shutdown are expected to fail
+			if (!stopping) {
+				handleException(new Unique4jException(e));
+			}
+			
+			// release everything held for the message
+			if (acknowledgement != null) {
+				acknowledgement.fail();
+			}
+		} catch (Unique4jException e) {
+			handleException(e);
+		} finally {
+			if (acknowledgement == null) {
+				// return buffers to pool
+				codecPool.release(codec);
+				
+				// close socket
+				try {
+					if (!retained) socket.close();
+				} catch (IOException e) {
+					handleException(new Unique4jException(e));
+				}
+			}
+		}
+	}
+	
+	// admit a message of the given length, null if it has been rejected
+	Acknowledgement admitMessage(SocketChannel socket, MessageCodec codec, int length, boolean keepAlive) throws IOException {
+		// reject messages exceeding the size limit before allocating anything
+		if (length > maxMessageSize) {
+			writeResponse(socket, codec, DeliveryStatus.REJECTED_TOO_LARGE, keepAlive);
+			return null;
+		}
+		
+		// reserve message bytes from the memory budget
+		int permits = Math.max(length, 0);
+		if (!budget.tryAcquire(permits)) {
+			writeResponse(socket, codec, DeliveryStatus.REJECTED_BUSY, keepAlive);
+			return null;
+		}
+		
+		Acknowledgement acknowledgement = new Acknowledgement(this, socket, codec, permits);
+		acknowledgement.keepAlive = keepAlive;
+		startMessage(acknowledgement);
+		return acknowledgement;
+	}
+	
+	// read the bytes of an admitted message
+	private ByteBuffer readMessage(SocketChannel socket, MessageCodec codec, int length) throws IOException {
+		if (length < 0) {
+			return null;
+		}
+		
+		// read message bytes from client
+		ByteBuffer payload = codec.buffer(length);
+		Protocol.readFully(socket, payload);
+		payload.flip();
+		return codec.readOnly(payload);
+	}
+	
+	// hand an admitted message to user code
+	void deliverMessage(SocketChannel socket, MessageCodec codec, ByteBuffer message, Acknowledgement acknowledgement) throws IOException {
+		// make message durable before acknowledging it
+		MessageJournal journal = this.journal;
+		if (journal != null) {
+			acknowledgement.entry = journal.append(message);
+			journal.commit();
+		}
+		
+		if (deliveryMode == DeliveryMode.ON_RECEIPT) {
+			// write pre-encoded response to client
+			writeResponse(socket, codec, DeliveryStatus.ACCEPTED, acknowledgement.keepAlive);
+			
+			// close socket
+			if (!acknowledgement.keepAlive) {
+				socket.close();
+			}
+			acknowledgement.socket = null;
+		}
+		else if (!acknowledgement.keepAlive) {
+			// validate this instance now, report status once processed
+			writeResponse(socket, codec, null);
+		}
+		
+		// perform user action on message
+		try {
+			receiveMessage(message, acknowledgement);
+		} catch (RuntimeException e) {
+			acknowledgement.fail();
+			throw e;
+		}
+	}
+	
+	// complete a received message and release everything held for it
+	void finishMessage(Acknowledgement acknowledgement, DeliveryStatus status) {
+		// report status to client
+		SocketChannel socket = acknowledgement.socket;
+		if (socket != null) {
+			try {
+				writeStatus(socket, acknowledgement.codec, status);
+			} catch (IOException e) {
+				handleException(new Unique4jException(e));
+			} finally {
+				// keep-alive connections stay open for the next message
+				if (!acknowledgement.keepAlive) {
+					try {
+						socket.close();
+					} catch (IOException e) {
+						handleException(new Unique4jException(e));
+					}
+				}
+			}
+		}
+		
+		// mark message as processed
+		MessageJournal journal = this.journal;
+		if (journal != null && acknowledgement.entry != -1 && status == DeliveryStatus.DELIVERED) {
+			journal.acknowledge(acknowledgement.entry);
+		}
+		
+		// return message bytes to the memory budget
+		budget.release(acknowledgement.permits);
+		
+		// return buffers to pool
+		// buffers of messages cancelled by a shutdown may still be in use
+		if (acknowledgement.codec != null && !stopping) {
+			codecPool.release(acknowledgement.codec);
+		}
+		
+		// count message as finished
+		synchronized (inFlightLock) {
+			inFlight.remove(acknowledgement);
+			finished++;
+			publishLoad();
+			inFlightLock.notifyAll();
+		}
+	}
+	
+	// track a received message until it is finished
+	private void startMessage(Acknowledgement acknowledgement) {
+		synchronized (inFlightLock) {
+			inFlight.add(acknowledgement);
+			publishLoad();
+		}
+	}
+	
+	// publish the number of messages in flight to the pool, called with the in-flight lock held
+	private void publishLoad() {
+		if (poolSlot != -1 && server != null) {
+			poolTable.publish(poolSlot, inFlight.size());
+		}
+	}
+	
+	// wait until all messages in flight and all other connection threads have finished, true if drained before the deadline
+	private boolean awaitInFlight(long deadline) {
+		Thread current = Thread.currentThread();
+		synchronized (inFlightLock) {
+			while (!inFlight.isEmpty() || handlers.size() > (handlers.contains(current) ? 1 : 0)) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				
+				try {
+					TimeUnit.NANOSECONDS.timedWait(inFlightLock, remaining);
+				} catch (InterruptedException e) {
+					current.interrupt();
+					return false;
+				}
+			}
+		}
+		
+		return true;
+	}
+	
+	// read the type and APP_ID of a control frame, 0 if it belongs to another application
+	private byte readControlType(SocketChannel socket, MessageCodec codec) throws IOException {
+		// read control frame type
+		ByteBuffer buffer = codec.control(1);
+		Protocol.readFully(socket, buffer);
+		byte type = buffer.get(0);
+		
+		// compare APP_ID with this instance
+		if (!Protocol.readAppId(socket, codec.control(appIdFrame.length), appIdFrame)) {
+			return 0;
+		}
+		
+		return type;
+	}
+	
+	// read the fencing token and secret of a cluster frame, true if they match the lease of this leader
+	private boolean readLeaseCredentials(SocketChannel socket, MessageCodec codec) throws IOException {
+		ByteBuffer credentials = codec.control(2 * Protocol.LONG_BYTES);
+		Protocol.readFully(socket, credentials);
+		
+		// a former leader holds no token and rejects everything
+		long token = lease.getToken();
+		return token != -1 && credentials.getLong(0) == token && credentials.getLong(Protocol.LONG_BYTES) == lease.getSecret();
+	}
+	
+	// handle a control frame from another instance, true if the connection has been retained
+	private boolean handleControl(SocketChannel socket, MessageCodec codec, byte type) throws IOException, Unique4jException {
+		if (type == Protocol.HANDOVER) {
+			// read successor port, drain timeout and handover token
+			ByteBuffer body = codec.control(Protocol.INT_BYTES + 2 * Protocol.LONG_BYTES);
+			Protocol.readFully(socket, body);
+			handOver(socket, codec, body.getInt(0), body.getLong(Protocol.INT_BYTES), body.getLong(Protocol.INT_BYTES + Protocol.LONG_BYTES));
+		}
+		else if (type == Protocol.SESSION) {
+			// validate this instance once for the whole session
+			writeResponse(socket, codec, DeliveryStatus.ACCEPTED);
+			handleSession(socket);
+		}
+		else if (type == Protocol.PING) {
+			// answer immediately without involving the user
+			writeResponse(socket, codec, DeliveryStatus.ACCEPTED);
+			
+			// echo the probe of the client
+			ByteBuffer probe = codec.control(Protocol.LONG_BYTES);
+			Protocol.readFully(socket, probe);
+			probe.flip();
+			Protocol.writeFully(socket, probe);
+		}
+		else if (type == Protocol.SUBSCRIBE) {
+			// keep the connection for broadcasts without a thread
+			// register before responding so that no later broadcast is missed
+			synchronized (subscribers) {
+				if (!stopping) {
+					writeResponse(socket, codec, DeliveryStatus.ACCEPTED);
+					socket.configureBlocking(false);
+					subscribers.add(socket);
+					return true;
+				}
+			}
+		}
+		
+		return false;
+	}
+	
+	// handle messages on a keep-alive connection until the client closes it
+	private void handleSession(SocketChannel socket) throws IOException {
+		while (true) {
+			MessageCodec codec = codecPool.acquire();
+			
+			// owns codec and reserved budget once created
+			Acknowledgement acknowledgement = null;
+			
+			try {
+				// wait for the next message, idle sessions are closed on shutdown
+				int length;
+				synchronized (inFlightLock) {
+					if (stopping) {
+						return;
+					}
+					idleSessions.add(socket);
+				}
+				try {
+					length = Protocol.readInt(socket, codec);
+				} catch (EOFException e) {
+					// client closed the session
+					return;
+				} finally {
+					synchronized (inFlightLock) {
+						idleSessions.remove(socket);
+					}
+				}
+				
+				// end session on invalid frames
+				if (length < -1) {
+					return;
+				}
+				
+				// reserve resources for the message
+				acknowledgement = admitMessage(socket, codec, length, true);
+				
+				if (acknowledgement != null) {
+					// read message and perform user action on it
+					deliverMessage(socket, codec, readMessage(socket, codec, length), acknowledgement);
+					
+					// report statuses in the order of the messages
+					acknowledgement.await();
+				}
+				else if (length > maxMessageSize) {
+					// end session instead of reading an oversized message
+					return;
+				}
+				else {
+					// discard rejected message to keep the session in sync
+					Protocol.skip(socket, codec.buffer(Math.min(length, MessageCodecPool.DEFAULT_CAPACITY)), length);
+				}
+			} catch (IOException e) {
+				// release everything held for the message
+				if (acknowledgement != null) {
+					acknowledgement.fail();
+				}
+				throw e;
+			} catch (InterruptedException e) {
+				// session cancelled by a shutdown
+				return;
+			} finally {
+				if (acknowledgement == null) {
+					// return buffers to pool
+					codecPool.release(codec);
+				}
+			}
+		}
+	}
+	
+	// close subscriptions and keep-alive connections waiting for their next message
+	private void closeConnections() {
+		List<SocketChannel> connections;
+		synchronized (inFlightLock) {
+			connections = new ArrayList<SocketChannel>(idleSessions);
+		}
+		synchronized (subscribers) {
+			connections.addAll(subscribers);
+			subscribers.clear();
+		}
+		
+		for (SocketChannel connection : connections) {
+			try {
+				connection.close();
+			} catch (IOException e) {
+				handleException(new Unique4jException(e));
+			}
+		}
+	}
+	
+	// write a frame to all subscribers, dropping those which cannot take it without blocking
+	private int broadcastFrame(MessageCodec codec, ByteBuffer payload) {
+		ByteBuffer[] frame = codec.frame(payload);
+		ByteBuffer header = frame[0];
+		int start = payload.position();
+		
+		int reached = 0;
+		synchronized (subscribers) {
+			Iterator<SocketChannel> iterator = subscribers.iterator();
+			while (iterator.hasNext()) {
+				SocketChannel subscriber = iterator.next();
+				
+				// rewind the shared frame instead of copying it
+				header.position(0);
+				payload.position(start);
+				
+				boolean complete;
+				try {
+					long written;
+					do {
+						written = subscriber.write(frame);
+					} while (written > 0 && payload.hasRemaining());
+					complete = !header.hasRemaining() && !payload.hasRemaining();
+				} catch (IOException e) {
+					complete = false;
+				}
+				
+				if (complete) {
+					reached++;
+				}
+				else {
+					// a partial frame would corrupt the stream, drop the subscriber
+					iterator.remove();
+					try {
+						subscriber.close();
+					} catch (IOException e) {
+						handleException(new Unique4jException(e));
+					}
+				}
+			}
+		}
+		
+		return reached;
+	}
+	
+	// hand the lock over to a successor listening on the given port
+	private void handOver(SocketChannel socket, MessageCodec codec, int successorPort, long timeout, long token) throws IOException, Unique4jException {
+		// only a successor able to read the lock file may take over
+		long expected = handoverToken;
+		if (expected == 0 || token != expected) {
+			writeResponse(socket, codec, DeliveryStatus.REJECTED_UNAUTHORIZED);
+			return;
+		}
+		
+		boolean durable;
+		synchronized (this) {
+			// only one handover at a time
+			if (server == null || handingOver || hosted || key != null || poolSlot != -1 || lease != null) {
+				writeResponse(socket, codec, DeliveryStatus.REJECTED_BUSY);
+				return;
+			}
+			handingOver = true;
+			
+			try {
+				// point subsequent instances to the successor
+				handoverToken = 0;
+				writeEndpointToLockFile(Protocol.endpoint(successorPort, false));
+				writeResponse(socket, codec, DeliveryStatus.ACCEPTED);
+				socket.close();
+				
+				// stop accepting connections
+				stopping = true;
+				closeServer();
+				closeConnections();
+				
+				// wait for messages in flight to finish
+				awaitInFlight(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+				
+				// leave unfinished messages in the journal for the successor
+				durable = journal != null;
+				if (durable) {
+					journal.close();
+					journal = null;
+				}
+				
+				// let the successor take over without withdrawing its endpoint
+				server = null;
+				unlockElection(false);
+			} finally {
+				handingOver = false;
+			}
+		}
+		
+		// messages without a journal cannot be migrated, let them finish before the application may exit
+		if (!durable) {
+			while (!awaitInFlight(System.nanoTime() + RELEASE_GRACE)) {
+				if (Thread.currentThread().isInterrupted()) {
+					break;
+				}
+			}
+		}
+		
+		// perform user action after handover
+		afterHandover();
+	}
+	
+	// deliver pending journal entries to user code
+	private void replayJournal() {
+		List<Long> ids = new ArrayList<Long>();
+		List<ByteBuffer> payloads = new ArrayList<ByteBuffer>();
+		journal.pending(ids, payloads);
+		
+		for (int i = 0; i < ids.size(); i++) {
+			Acknowledgement acknowledgement = new Acknowledgement(this, null, null, 0);
+			acknowledgement.entry = ids.get(i);
+			startMessage(acknowledgement);
+			
+			// perform user action on message
+			try {
+				receiveMessage(payloads.get(i), acknowledgement);
+			} catch (RuntimeException e) {
+				acknowledgement.fail();
+				handleException(e);
+			}
+		}
+	}
+	
+	// write delivery status, preceded by the pre-encoded APP_ID frame unless the connection has been validated before
+	private void writeResponse(SocketChannel socket, MessageCodec codec, DeliveryStatus status, boolean keepAlive) throws IOException {
+		if (keepAlive) {
+			writeStatus(socket, codec, status);
+		}
+		else {
+			writeResponse(socket, codec, status);
+		}
+	}
+	
+	// write pre-encoded APP_ID frame followed by the delivery status, if any
+	private void writeResponse(SocketChannel socket, MessageCodec codec, DeliveryStatus status) throws IOException {
+		ByteBuffer response = codec.control(appIdFrame.length + (status == null ? 0 : Protocol.INT_BYTES));
+		response.put(appIdFrame);
+		if (status != null) {
+			response.putInt(status.getCode());
+		}
+		response.flip();
+		Protocol.writeFully(socket, response);
+	}
+	
+	// write delivery status
+	private void writeStatus(SocketChannel socket, MessageCodec codec, DeliveryStatus status) throws IOException {
+		ByteBuffer response = codec.control(Protocol.INT_BYTES);
+		response.putInt(status.getCode());
+		response.flip();
+		Protocol.writeFully(socket, response);
+	}
+	
+	// do client tasks
+	private void doClient() throws Unique4jException {
+		// try to establish connection to server
+		SocketChannel socket = connect();
+		
+		// connection failed try to start server
+		if (socket == null) {
+			startServer();
+			return;
+		}
+		
+		// connection successful try to connect to server
+		MessageCodec codec = codecPool.acquire();
+		try {
+			// get message to be sent to first instance
+			ByteBuffer message;
+			sendCodec = codec;
+			try {
+				message = sendMessageBytes();
+			} finally {
+				sendCodec = null;
+			}
+			
+			boolean valid;
+			while (true) {
+				// write message to server
+				// a rejecting server may close the connection before reading everything
+				IOException writeException = null;
+				try {
+					// the cluster leader needs the credentials of its lease
+					if (lease != null) {
+						ByteBuffer header = codec.control(Protocol.INT_BYTES + 1 + appIdFrame.length + 2 * Protocol.LONG_BYTES);
+						header.putInt(Protocol.MAGIC);
+						header.put(Protocol.CLUSTER);
+						header.put(appIdFrame);
+						header.putLong(leaderToken);
+						header.putLong(leaderSecret);
+						header.flip();
+						Protocol.writeFully(socket, header);
+					}
+					// a shared host needs the APP_ID to route the message
+					else if (readHostedFromLockFile()) {
+						ByteBuffer header = codec.control(Protocol.INT_BYTES + 1 + appIdFrame.length);
+						header.putInt(Protocol.MAGIC);
+						header.put(Protocol.ROUTED);
+						header.put(appIdFrame);
+						header.flip();
+						Protocol.writeFully(socket, header);
+					}
+					Protocol.writeFrame(socket, codec, (message == null) ? null : message.duplicate());
+				} catch (IOException e) {
+					writeException = e;
+				}
+				
+				// read response from server and validate it
+				try {
+					valid = Protocol.readAppId(socket, codec.control(appIdFrame.length), appIdFrame);
+					break;
+				} catch (IOException e) {
+					// the first instance may have handed over before accepting the connection
+					socket.close();
+					if (!resolvePort()) {
+						throw (writeException != null) ? writeException : e;
+					}
+				}
+				
+				// retry with the successor
+				socket = connect();
+				if (socket == null) {
+					startServer();
+					return;
+				}
+			}
+			
+			// read delivery status from server
+			DeliveryStatus status = null;
+			if (valid) {
+				status = Protocol.readResponseStatus(socket, codec.control(Protocol.INT_BYTES));
+			}
+			
+			// close socket
+			socket.close();
+			
+			if (valid) {
+				// validation successful
+				deliveryStatus = status;
+				if (!status.isSuccessful()) {
+					throw new Unique4jException("Message not delivered to first instance: " + status);
+				}
+				
+				if (AUTO_EXIT) {
+					// perform pre-exit tasks
+					beforeExit();
+					// exit this instance
+					System.exit(0);
+				}
+			}
+			else {
+				// validation failed, this is the first instance
+				startServer();
+			}
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// return buffers to pool
+			codecPool.release(codec);
+			
+			// close socket
+		 	try {
+		 		socket.close();
+			} catch (IOException e) {
+				throw new Unique4jException(e);
+			}
+		}
+	}
+	
+	// connect to the first instance, following the lock file if the port is not reachable
+	private SocketChannel connect() throws Unique4jException {
+		while (true) {
+			try {
+				return (leaderHost == null) ? transport.connect(port) : connectLeader();
+			} catch (IOException e) {
+				if (!resolvePort()) {
+					return null;
+				}
+			}
+		}
+	}
+	
+	// connect to the cluster leader, giving up once a live leader would have accepted the connection
+	private SocketChannel connectLeader() throws IOException {
+		SocketChannel socket = SocketChannel.open();
+		boolean connected = false;
+		try {
+			socket.socket().connect(new InetSocketAddress(leaderHost, port), lease.getConnectTimeout());
+			connected = true;
+			return socket;
+		} finally {
+			if (!connected) {
+				socket.close();
+			}
+		}
+	}
+	
+	// read the leader from the lease file, true if it has changed
+	private boolean resolveLeader() throws Unique4jException {
+		ClusterLease.Lease current;
+		try {
+			current = lease.read();
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+		
+		if (current == null || !current.isLive() || (current.host.equals(leaderHost) && current.port == port && current.token == leaderToken)) {
+			return false;
+		}
+		
+		leaderHost = current.host;
+		leaderToken = current.token;
+		leaderSecret = current.secret;
+		port = current.port;
+		return true;
+	}
+	
+	// read port from lock file again, true if it has changed
+	private boolean resolvePort() throws Unique4jException {
+		if (lease != null) {
+			return resolveLeader();
+		}
+		
+		if (PORT_POLICY != PortPolicy.DYNAMIC) {
+			return false;
+		}
+		
+		int current = (key == null) ? readPortFromLockFile() : keyIndex.lookup(keyHash);
+		if (current == -1 || current == port) {
+			return false;
+		}
+		
+		port = current;
+		return true;
+	}
+	
+	// try to get port from lock file
+	private int readPortFromLockFile() throws Unique4jException {
+		return Protocol.parsePort(readEndpointFromLockFile());
+	}
+	
+	// try to get the endpoint published in the lock file
+	private String readEndpointFromLockFile() throws Unique4jException {
+		try {
+			return lockStrategy.resolve(lockName());
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	// check whether the lock file names a first instance served by a shared host
+	private boolean readHostedFromLockFile() throws Unique4jException {
+		// keyed singletons are never hosted
+		if (key != null) {
+			return false;
+		}
+		
+		try {
+			return Protocol.parseHosted(lockStrategy.resolve(lockName()));
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	// name of the lock file, which is numbered for the slots of a pool
+	private String lockName() {
+		return (poolSlot == -1) ? APP_ID : APP_ID + "." + poolSlot;
+	}
+	
+	// try to obtain the election lock without waiting
+	private boolean lockElection() throws Unique4jException {
+		try {
+			election = lockStrategy.tryLock(lockName());
+			return election != null;
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	// release the election lock, withdrawing the port unless a successor takes over
+	private void unlockElection(boolean withdraw) throws Unique4jException {
+		if (election == null) {
+			return;
+		}
+		
+		try {
+			election.release(withdraw);
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		} finally {
+			election = null;
+		}
+	}
+	
+	// publish this first instance in the registry and keep its heartbeat current
+	private void register() throws Unique4jException {
+		final int port = this.port;
+		final int slot = Unique4jRegistry.register(APP_ID, port);
+		registrySlot = slot;
+		
+		heartbeat = new TimerTask() {
+			@Override
+			public void run() {
+				try {
+					// stop once the slot has been taken over
+					if (!Unique4jRegistry.heartbeat(slot, port)) {
+						cancel();
+					}
+				} catch (Unique4jException e) {
+					handleException(e);
+				}
+			}
+		};
+		getTimer().schedule(heartbeat, Unique4jRegistry.HEARTBEAT_INTERVAL, Unique4jRegistry.HEARTBEAT_INTERVAL);
+	}
+	
+	// remove this first instance from the registry
+	private void unregister() throws Unique4jException {
+		if (heartbeat != null) {
+			heartbeat.cancel();
+			heartbeat = null;
+		}
+		
+		if (registrySlot != -1) {
+			Unique4jRegistry.unregister(registrySlot, port);
+			registrySlot = -1;
+		}
+	}
+	
+	// stop accepting connections, leaving a shared host to the other first instances
+	private void closeServer() throws IOException {
+		if (hosted) {
+			Unique4jHost.release(APP_ID, this);
+		}
+		else {
+			server.close();
+		}
+	}
+	
+	// get the timer running lease renewals and heartbeats
+	private static synchronized Timer getTimer() {
+		if (timer == null) {
+			timer = new Timer("Unique4j-timer", true);
+		}
+		return timer;
+	}
+	
+	// try to write port to lock file
+	private void writePortToLockFile(int port) throws Unique4jException {
+		// a fresh token for every election, hosted instances and pool slots never hand over
+		handoverToken = (hosted || poolSlot != -1) ? 0 : newHandoverToken();
+		writeEndpointToLockFile(Protocol.endpoint(port, hosted, handoverToken));
+	}
+	
+	// try to write an endpoint to lock file
+	private void writeEndpointToLockFile(String endpoint) throws Unique4jException {
+		try {
+			election.publish(endpoint);
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	// generate a secret handover token, never 0
+	private static long newHandoverToken() {
+		long token;
+		do {
+			token = RANDOM.nextLong();
+		} while (token == 0);
+		return token;
+	}
+	
+	/**
+	 * Free the lock if possible. This is only required to be called from the first instance.
+	 * 
+	 * @deprecated Use <code>releaseLock()</code> instead.
+	 * @throws Unique4jException throws Unique4jException if it is unable to stop the server or release file lock
+	 */
+	@Deprecated
+	public void free() throws Unique4jException {
+		releaseLock();
+	}
+	
+	/**
+	 * Free the lock if possible. This is only required to be called from the first instance.
+	 * 
+	 * @since 1.2
+	 * 
+	 * @deprecated Use <code>releaseLock()</code> instead.
+	 * @return true if able to release lock, false otherwise
+	 * @throws Unique4jException throws Unique4jException if it is unable to stop the server or release file lock
+	 */
+	@Deprecated
+	public boolean freeLock() throws Unique4jException {
+		return releaseLock();
+	}
+	
+	/**
+	 * Release the lock if possible. This is only required to be called from the first instance.
+	 * 
+	 * @since 1.5
+	 * 
+	 * @return true if able to release lock, false otherwise
+	 * @throws Unique4jException throws Unique4jException if it is unable to stop the server or release file lock
+	 */
+	public synchronized boolean releaseLock() throws Unique4jException {
+		try {
+			// release shared lock of a reader
+			boolean released = releaseReadLock();
+			
+			// close server socket
+			if (server != null) {
+				stopping = true;
+				closeServer();
+				closeConnections();
+				
+				if (key != null) {
+					// free the slot of the key
+					keyIndex.release(keyHash);
+				}
+				else if (lease != null) {
+					// expire the lease so that the next leader is elected immediately
+					leaseRenewal.cancel();
+					try {
+						lease.release();
+					} catch (IOException e) {
+						// the lease expires by itself
+						handleException(new Unique4jException(e));
+					}
+				}
+				else {
+					// remove from registry before the port is given up
+					unregister();
+					
+					// withdraw the port while still holding the lock
+					// so that no other instance picks up the port of a closed server
+					unlockElection(true);
+				}
+				
+				// try to close journal
+				if (journal != null) {
+					journal.close();
+					journal = null;
+				}
+				
+				server = null;
+				return true;
+			}
+			
+			return released;
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	/**
+	 * Free the lock after draining messages in flight. This is only required to be called from the first instance.<br><br>
+	 * 
+	 * The first instance stops accepting connections immediately and waits for running <code>receiveMessage()</code> calls
+	 * and unfinished acknowledgements until the timeout elapses. Messages still unfinished at the deadline are failed
+	 * and the threads handling them are interrupted. The lock is released in either case.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param timeout maximum time to wait for messages in flight
+	 * @param unit time unit of the timeout argument
+	 * @return report of the shutdown
+	 * @throws Unique4jException throws Unique4jException if there is an unexpected error
+	 */
+	public TerminationReport releaseLock(long timeout, TimeUnit unit) throws Unique4jException {
+		long start = System.nanoTime();
+		long deadline = start + unit.toNanos(timeout);
+		
+		long before;
+		synchronized (this) {
+			if (server == null) {
+				return new TerminationReport(false, 0, 0, new ArrayList<Thread>(), 0);
+			}
+			
+			// stop accepting connections
+			stopping = true;
+			try {
+				closeServer();
+			} catch (IOException e) {
+				throw new Unique4jException(e);
+			}
+			closeConnections();
+			
+			synchronized (inFlightLock) {
+				before = finished;
+			}
+		}
+		
+		// wait for messages in flight to finish
+		boolean drained = awaitInFlight(deadline);
+		
+		// cancel whatever is left
+		List<Acknowledgement> cancelled = new ArrayList<Acknowledgement>();
+		List<Thread> interrupted = new ArrayList<Thread>();
+		long drainedMessages;
+		synchronized (inFlightLock) {
+			drainedMessages = finished - before;
+			if (!drained) {
+				cancelled.addAll(inFlight);
+				for (Thread handler : handlers) {
+					if (handler != Thread.currentThread()) {
+						interrupted.add(handler);
+					}
+				}
+			}
+		}
+		
+		for (Acknowledgement acknowledgement : cancelled) {
+			acknowledgement.fail();
+		}
+		for (Thread handler : interrupted) {
+			handler.interrupt();
+		}
+		
+		// free the lock
+		releaseLock();
+		
+		return new TerminationReport(true, drainedMessages, cancelled.size(), interrupted, System.nanoTime() - start);
+	}
+	
+	/**
+	 * Broadcast an event from the first instance to all subscribers.<br><br>
+	 * 
+	 * The event is encoded once and the same bytes are written to every subscriber.
+	 * Subscribers which cannot take the event without blocking are disconnected.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param event event to broadcast
+	 * @return number of subscribers the event has been written to
+	 */
+	public int broadcast(String event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event must not be null");
+		}
+		
+		// no subscribers before acquiring the lock
+		if (codecPool == null) {
+			return 0;
+		}
+		
+		MessageCodec codec = codecPool.acquire();
+		try {
+			return broadcastFrame(codec, codec.encode(event));
+		} finally {
+			codecPool.release(codec);
+		}
+	}
+	
+	/**
+	 * Broadcast raw bytes from the first instance to all subscribers.<br><br>
+	 * 
+	 * The remaining bytes of the buffer are written to every subscriber without copying them.
+	 * The position of the buffer is not changed.
+	 * Subscribers which cannot take the event without blocking are disconnected.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param event bytes to broadcast
+	 * @return number of subscribers the event has been written to
+	 */
+	public int broadcastBytes(ByteBuffer event) {
+		if (event == null) {
+			throw new IllegalArgumentException("Event must not be null");
+		}
+		
+		// no subscribers before acquiring the lock
+		if (codecPool == null) {
+			return 0;
+		}
+		
+		MessageCodec codec = codecPool.acquire();
+		try {
+			return broadcastFrame(codec, event.duplicate());
+		} finally {
+			codecPool.release(codec);
+		}
+	}
+	
+	/**
+	 * Set whether the first instance is embedded into an event loop of the application.<br><br>
+	 * 
+	 * In embedded mode <code>acquireLock()</code> performs the election but starts no threads.
+	 * Instead the bound non-blocking server socket is exposed through <code>getServerChannel()</code>
+	 * and the application accepts connections on its own <code>Selector</code>,
+	 * feeding each of them to a <code>MessageDecoder</code> obtained from <code>newDecoder()</code>.
+	 * Messages are delivered on the thread calling the decoder.
+	 * Pending messages of a durable journal are delivered before <code>acquireLock()</code> returns.<br><br>
+	 * 
+	 * Embedded first instances only accept plain messages, not keep-alive sessions, subscriptions or handovers.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param embedded If true, expose the server socket instead of starting threads
+	 */
+	public void setEmbedded(boolean embedded) {
+		this.embedded = embedded;
+	}
+	
+	/**
+	 * Set the directory holding the lock file and the other shared files of this instance,
+	 * such as journals, key indexes, pool tables and readers files. Defaults to <code>LockDirectories.getDefault()</code>.<br><br>
+	 * 
+	 * This also sets a <code>FileLockStrategy</code> for the directory.
+	 * <code>Unique4jClient</code>, <code>Unique4jConnection</code> and <code>Unique4jSubscription</code> find the first instance
+	 * when they are given the same lock strategy, see <code>getLockStrategy()</code>.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param lockDirectory lock directory, e.g. <code>LockDirectories.sharedMemory()</code>
+	 */
+	public void setLockDirectory(File lockDirectory) {
+		this.lockDirectory = lockDirectory;
+		this.lockStrategy = new FileLockStrategy(lockDirectory);
+	}
+	
+	/**
+	 * Set the strategy electing the first instance and publishing its port. Defaults to a <code>FileLockStrategy</code>.<br><br>
+	 * 
+	 * Keyed singletons, readers and clusters keep their own election mechanisms.
+	 * <code>Unique4jClient</code>, <code>Unique4jConnection</code> and <code>Unique4jSubscription</code> find the first instance
+	 * when they are given the same lock strategy.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param lockStrategy lock strategy
+	 */
+	public void setLockStrategy(LockStrategy lockStrategy) {
+		this.lockStrategy = lockStrategy;
+	}
+	
+	/**
+	 * Get the strategy electing the first instance and publishing its port.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @return the lock strategy
+	 */
+	public LockStrategy getLockStrategy() {
+		return lockStrategy;
+	}
+	
+	/**
+	 * Set the transport carrying messages to the first instance. Defaults to a <code>LoopbackTransport</code>.<br><br>
+	 * 
+	 * Hosted first instances and clusters keep their own sockets.
+	 * <code>Unique4jClient</code>, <code>Unique4jConnection</code> and <code>Unique4jSubscription</code> reach the first instance
+	 * when they are given the same transport.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param transport transport
+	 */
+	public void setTransport(Transport transport) {
+		this.transport = transport;
+	}
+	
+	/**
+	 * Get the transport carrying messages to the first instance.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @return the transport
+	 */
+	public Transport getTransport() {
+		return transport;
+	}
+	
+	/**
+	 * Elect the first instance across hosts which share a directory, for example a mounted network file system.
+	 * The lease is held for <code>DEFAULT_LEASE_DURATION</code> milliseconds at a time.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param directory shared directory holding the lease file, null to disable cluster mode
+	 * @param advertisedHost host name or address of this host on which the leader listens and the other hosts reach it
+	 * @throws IllegalStateException if the port policy is not dynamic
+	 * @see #setCluster(File, String, long, TimeUnit)
+	 */
+	public void setCluster(File directory, String advertisedHost) {
+		setCluster(directory, advertisedHost, DEFAULT_LEASE_DURATION, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Elect the first instance across hosts which share a directory, for example a mounted network file system.<br><br>
+	 * 
+	 * In cluster mode the leader is elected through a lease file named after the APP_ID in the shared directory instead of a local lock file.
+	 * The leader listens on the advertised address only and publishes it in the lease.
+	 * It renews the lease periodically and releases the lock if another instance has taken the lease over, e.g. after a long pause.
+	 * All other instances, on any host, send their message to the advertised address of the leader.
+	 * They give up connecting to an unreachable leader after a quarter of the lease duration.
+	 * An expired lease is taken over by the next instance calling <code>acquireLock()</code>.<br><br>
+	 * 
+	 * Every new leader gets a higher fencing token, see <code>getFencingToken()</code>.
+	 * The leader steps down before its lease expires if it cannot renew it, e.g. because the shared directory is unreachable.
+	 * The clocks of the hosts must be synchronized to well within the lease duration.<br><br>
+	 * 
+	 * A candidate takes over a missing lease, or a lease which has expired more than a quarter of the lease duration ago, at once.
+	 * A more recently expired lease may still be renewed by its leader or be stale contents cached by the file system,
+	 * so <code>acquireLock()</code> first waits for a quarter of the lease duration and reads the lease again,
+	 * and so does a candidate which loses the race for the next fencing token to a competing candidate.
+	 * The lease duration must therefore be at least four times the longest time for which the shared directory may return stale contents,
+	 * e.g. the attribute cache timeout of NFS, which is up to 60 seconds unless the directory is mounted with a shorter <code>actimeo</code>.<br><br>
+	 * 
+	 * Cluster mode cannot be combined with keyed singletons, <code>awaitLock()</code> or <code>takeOverLock()</code>.
+	 * Every message to the leader carries the fencing token and a random secret of its lease, and the leader drops messages without them,
+	 * so only hosts which can read the shared directory are able to send messages. Messages are not encrypted, so the hosts must be on a trusted network.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param directory shared directory holding the lease file, null to disable cluster mode
+	 * @param advertisedHost host name or address of this host on which the leader listens and the other hosts reach it
+	 * @param leaseDuration time for which the lease is held without renewal, at least four times the attribute cache timeout of the shared directory
+	 * @param unit time unit of the lease duration argument
+	 * @throws IllegalArgumentException if the lease duration is shorter than a millisecond
+	 * @throws IllegalStateException if the port policy is not dynamic
+	 */
+	public void setCluster(File directory, String advertisedHost, long leaseDuration, TimeUnit unit) {
+		if (directory == null) {
+			this.lease = null;
+			return;
+		}
+		if (advertisedHost == null) {
+			throw new IllegalArgumentException("Advertised host must not be null");
+		}
+		if (unit.toMillis(leaseDuration) < 1) {
+			throw new IllegalArgumentException("Lease duration must be at least a millisecond");
+		}
+		if (PORT_POLICY != PortPolicy.DYNAMIC) {
+			throw new IllegalStateException("Cluster mode requires dynamic port policy");
+		}
+		this.advertisedHost = advertisedHost;
+		this.lease = new ClusterLease(new File(directory, APP_ID + ".lease"), unit.toMillis(leaseDuration));
+	}
+	
+	/**
+	 * Get the fencing token of the cluster leader.<br>
+	 * The token increases with every change of leadership. Passing it along with writes to shared resources
+	 * allows them to reject writes from a former leader which has not yet noticed the loss of its lease.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @return the fencing token, or -1 if this instance is not the cluster leader
+	 */
+	public long getFencingToken() {
+		return (lease == null) ? -1 : lease.getToken();
+	}
+	
+	/**
+	 * Set the maximum number of first instances. Defaults to 1.<br><br>
+	 * 
+	 * With a pool size of N, up to N instances become first instances, each holding one numbered slot with its own lock file.
+	 * Every first instance publishes the number of its messages in flight.
+	 * Once all slots are taken, subsequent instances send their message to the least loaded first instance.
+	 * This allows CPU heavy work to run in parallel in a bounded number of processes.<br><br>
+	 * 
+	 * Instance pools cannot be hosted, registered or handed over, and are not reachable through <code>Unique4jClient</code>.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param poolSize Maximum number of first instances
+	 * @throws IllegalStateException if the pool size is greater than 1 and the port policy is not dynamic
+	 */
+	public void setPoolSize(int poolSize) {
+		if (poolSize < 1) {
+			throw new IllegalArgumentException("Pool size must be positive");
+		}
+		if (poolSize > 1 && PORT_POLICY != PortPolicy.DYNAMIC) {
+			throw new IllegalStateException("Instance pools require dynamic port policy");
+		}
+		this.poolSize = poolSize;
+	}
+	
+	/**
+	 * Set whether the first instance is served by the process-wide host instead of its own server socket.<br><br>
+	 * 
+	 * All hosted first instances of a JVM share one listening socket and one accepting thread.
+	 * The host routes connections by the APP_ID carried in the control frame header,
+	 * which subsequent instances add to their messages when the lock file carries the hosted flag.
+	 * Subsequent instances of Unique4j versions before 1.6 cannot send messages to a hosted first instance.
+	 * Hosted first instances cannot hand over their lock and cannot be embedded.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param hosted If true, use the process-wide host
+	 * @throws IllegalStateException if the port policy is not dynamic
+	 */
+	public void setHosted(boolean hosted) {
+		if (hosted && PORT_POLICY != PortPolicy.DYNAMIC) {
+			throw new IllegalStateException("Host mode requires dynamic port policy");
+		}
+		this.hosted = hosted;
+	}
+	
+	/**
+	 * Get the non-blocking server socket of an embedded first instance.<br>
+	 * Register it with <code>SelectionKey.OP_ACCEPT</code> on the selector of the application.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @return the server socket, or null if this is not an embedded first instance
+	 */
+	public ServerSocketChannel getServerChannel() {
+		return (embedded && !hosted) ? server : null;
+	}
+	
+	/**
+	 * Create a decoder for a connection accepted from the server socket of an embedded first instance.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @return a new decoder for a single connection
+	 */
+	public MessageDecoder newDecoder() {
+		return new MessageDecoder(this, codecPool);
+	}
+	
+	/**
+	 * Set whether the pooled message buffers are allocated as direct buffers.<br>
+	 * Direct buffers avoid an extra copy when reading from and writing to sockets. By default direct buffers are used.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param directBuffers If true, allocate pooled message buffers as direct buffers
+	 */
+	public void setDirectBuffers(boolean directBuffers) {
+		this.directBuffers = directBuffers;
+	}
+	
+	/**
+	 * Set the maximum size of a single message in bytes accepted by the first instance.<br>
+	 * Larger messages are rejected before any memory is allocated for them. Defaults to <code>DEFAULT_MAX_MESSAGE_SIZE</code>.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param maxMessageSize maximum size of a single message in bytes
+	 */
+	public void setMaxMessageSize(int maxMessageSize) {
+		if (maxMessageSize < 0) {
+			throw new IllegalArgumentException("Maximum message size must not be negative");
+		}
+		this.maxMessageSize = maxMessageSize;
+	}
+	
+	/**
+	 * Set the number of message bytes the first instance may hold in memory across all connections.<br>
+	 * Messages which do not fit into the remaining budget are rejected as busy. Defaults to <code>DEFAULT_MEMORY_BUDGET</code>.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param memoryBudget maximum number of message bytes in flight
+	 */
+	public void setMemoryBudget(int memoryBudget) {
+		if (memoryBudget < 0) {
+			throw new IllegalArgumentException("Memory budget must not be negative");
+		}
+		this.memoryBudget = memoryBudget;
+	}
+	
+	/**
+	 * Set whether the first instance journals messages to disk before acknowledging them.<br><br>
+	 * 
+	 * In durable mode every received message is appended to a memory-mapped journal in the lock directory and forced to disk
+	 * before the subsequent instance is acknowledged. Concurrent messages share a single disk sync.
+	 * Messages whose <code>receiveMessage()</code> did not complete, for example because the first instance crashed,
+	 * are delivered again when the next first instance starts. Therefore a message may be received more than once.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param durable If true, journal messages before acknowledging them
+	 */
+	public void setDurable(boolean durable) {
+		this.durable = durable;
+	}
+	
+	/**
+	 * Set whether the first instance is published in the machine-wide registry.<br><br>
+	 * 
+	 * A registered first instance keeps its port, process ID, start time and heartbeat in <code>Unique4jRegistry</code>.
+	 * A registered subsequent instance resolves the port from the registry before falling back to the lock file.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param registered If true, publish the first instance in the registry
+	 */
+	public void setRegistered(boolean registered) {
+		this.registered = registered;
+	}
+	
+	/**
+	 * Set when the first instance acknowledges received messages. Defaults to <code>ON_RECEIPT</code>.<br><br>
+	 * 
+	 * This method must be invoked before <code>acquireLock()</code>.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param deliveryMode Delivery mode to use - ON_RECEIPT or AFTER_PROCESSING
+	 */
+	public void setDeliveryMode(DeliveryMode deliveryMode) {
+		this.deliveryMode = deliveryMode;
+	}
+	
+	/**
+	 * Get the delivery status of the message sent by this subsequent instance.<br>
+	 * Use this method after invoking <code>acquireLock()</code> with auto exit turned off.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @return the delivery status, or null if no message has been sent
+	 */
+	public DeliveryStatus getDeliveryStatus() {
+		return deliveryStatus;
+	}
+	
+	/**
+	 * Get the possible port of server socket.<br>
+	 * Use this method after invoking <code>acquireLock()</code> method. The returned port is not a guarantee.<br><br>
+	 * 
+	 * For DYNAMIC_PORT policy, it returns -1 before invoking <code>acquireLock()</code>.
+	 * After invoking <code>acquireLock()</code>, it returns a possible port of the server.<br><br>
+	 *
+	 * For a static port policy, it always returns the static port.
+	 * 
+	 * @since 1.5
+	 * 
+	 * @return the port of the server socket
+	 */
+	public int getPort() {
+		return port;
+	}
+	
+	/**
+	 * Method used in first instance to receive messages from subsequent instances.<br><br>
+	 * 
+	 * This method is not synchronized.
+	 * 
+	 * @param message message received by first instance from subsequent instances
+	 */
+	protected abstract void receiveMessage(String message);
+	
+	/**
+	 * Method used in first instance to receive raw message bytes from subsequent instances.<br><br>
+	 * 
+	 * The buffer is a read-only view of the received frame and is only valid until this method returns.
+	 * Copy the bytes if they are required afterwards.<br>
+	 * By default the bytes are decoded as UTF-8 and passed on to <code>receiveMessage(String)</code>.
+	 * Override this method to handle binary messages without constructing a string.<br><br>
+	 * 
+	 * This method is not synchronized.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param message read-only view of the message bytes received by first instance, or null if a null message was sent
+	 */
+	protected void receiveMessage(ByteBuffer message) {
+		if (message == null) {
+			receiveMessage((String) null);
+			return;
+		}
+		
+		// decode using pooled coders
+		String decoded;
+		MessageCodec codec = codecPool.acquire();
+		try {
+			decoded = codec.decode(message);
+		} finally {
+			codecPool.release(codec);
+		}
+		
+		receiveMessage(decoded);
+	}
+	
+	/**
+	 * Method used in first instance to receive raw message bytes from subsequent instances and acknowledge them.<br><br>
+	 * 
+	 * The message must be completed by invoking either <code>complete()</code> or <code>fail()</code> on the acknowledgement,
+	 * possibly from another thread. The buffer remains valid until then.
+	 * In <code>AFTER_PROCESSING</code> delivery mode the subsequent instance waits for this outcome.<br>
+	 * By default <code>receiveMessage(ByteBuffer)</code> is invoked and the message is completed once it returns.
+	 * Override this method to process messages asynchronously.<br><br>
+	 * 
+	 * This method is not synchronized.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @param message read-only view of the message bytes received by first instance, or null if a null message was sent
+	 * @param acknowledgement completion handle of the message
+	 */
+	protected void receiveMessage(ByteBuffer message, Acknowledgement acknowledgement) {
+		receiveMessage(message);
+		acknowledgement.complete();
+	}
+	
+	/**
+	 * Method used in subsequent instances to send message to first instance.<br><br>
+	 * 
+	 * It is not recommended to perform blocking (long running) tasks here. Use <code>beforeExit()</code> method instead.<br>
+	 * One exception to this rule is if you intend to perform some user interaction before sending the message.<br><br>
+	 * 
+	 * This method is not synchronized.
+	 * 
+	 * @return message sent from subsequent instances
+	 */
+	protected abstract String sendMessage();
+	
+	/**
+	 * Method used in subsequent instances to send raw message bytes to first instance.<br><br>
+	 * 
+	 * The remaining bytes of the returned buffer are sent as is.<br>
+	 * By default the result of <code>sendMessage()</code> is encoded as UTF-8.
+	 * Override this method to send binary messages without constructing a string.<br><br>
+	 * 
+	 * It is not recommended to perform blocking (long running) tasks here. Use <code>beforeExit()</code> method instead.<br><br>
+	 * 
+	 * This method is not synchronized.
+	 * 
+	 * @since 1.6
+	 * 
+	 * @return message bytes sent from subsequent instances, or null to send a null message
+	 */
+	protected ByteBuffer sendMessageBytes() {
+		String message = sendMessage();
+		
+		// encode into the pooled buffer while sending
+		if (sendCodec != null) {
+			return sendCodec.encode(message);
+		}
+		
+		return (message == null) ? null : ByteBuffer.wrap(message.getBytes(MessageCodec.CHARSET));
+	}
+	
+	/**
+	 * Method to receive and handle exceptions occurring while first instance is listening for subsequent instances.<br><br>
+	 * 
+	 * By default prints stack trace of all exceptions. Override this method to handle exceptions explicitly.<br><br>
+	 * 
+	 * This method is not synchronized.
+	 * 
+	 * @param exception exception occurring while first instance is listening for subsequent instances
+	 */
+	protected void handleException(Exception exception) {
+		exception.printStackTrace();
+	}
+	
+	/**
+	 * This method is called before exiting from subsequent instances.<br><br>
+	 * 
+	 * Override this method to perform blocking tasks before exiting from subsequent instances.<br>
+	 * This method is not invoked if auto exit is turned off.<br><br>
+	 * 
+	 * This method is not synchronized.
+	 * 
+	 * @since 1.2
+	 */
+	protected void beforeExit() {}
+	
+	/**
+	 * This method is called after the first instance has handed over its lock to a successor.<br><br>
+	 * 
+	 * The library never exits the process after a handover, whether auto exit is turned on or not.
+	 * Override this method to shut down the application, e.g. by calling <code>System.exit()</code>.<br>
+	 * Without a journal, messages still in flight cannot be migrated to the successor,
+	 * so this method is only called once they have finished.<br><br>
+	 * 
+	 * This method is called from the thread which handled the handover request and is not synchronized.
+	 * 
+	 * @since 1.6
+	 */
+	protected void afterHandover() {}
+	
+}
@@ -0,0 +1,405 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Standalone client to send a message to a running first instance.<br><br>
+ * 
+ * The client discovers the first instance through its lock strategy and never becomes the first instance itself.
+ * By default it resolves lock files in the default lock directory and connects over the loopback transport.
+ * A first instance using another lock directory, lock strategy or transport is reached by passing the same lock strategy and transport.
+ * It does not require subclassing <code>Unique4j</code> and loads as few classes as possible,
+ * which makes it suitable for command line tools that only notify a running application.<br><br>
+ * 
+ * The first instance must use the dynamic port policy.<br><br>
+ * 
+ * The client can also be run from the command line, for example as a native image built with the <code>native</code> profile:
+ * <pre>
+ *	unique4j-client [--lock-dir &lt;directory&gt;] &lt;APP_ID&gt; [arguments...]
+ * </pre>
+ * The arguments are forwarded as a JSON array, which is the format expected by <code>Unique4jList</code>.
+ * The exit code is 0 if the arguments have been delivered, 1 if no first instance is running and 2 if the delivery failed,
+ * so that a launch script only starts the JVM when no first instance exists.<br><br>
+ * 
+ * Sample usage:
+ * <pre>
+ *	// unique application ID
+ *	String APP_ID = "in.pratanumandal.unique4j-mlsdvo-20191511-#j.6";
+ *	
+ *	// send message to the first instance
+ *	DeliveryStatus status = Unique4jClient.send(APP_ID, "Hello World");
+ *	
+ *	if (status == null) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;System.out.println("Application is not running");
+ *	}
+ * </pre>
+ * 
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class Unique4jClient {
+	
+	// command line option naming the lock directory
+	private static final String LOCK_DIR_OPTION = "--lock-dir";
+	
+	// exit code when the arguments have been delivered
+	static final int EXIT_DELIVERED = 0;
+	
+	// exit code when no first instance is running
+	static final int EXIT_NOT_RUNNING = 1;
+	
+	// exit code when the delivery failed
+	static final int EXIT_FAILED = 2;
+	
+	private Unique4jClient() {}
+	
+	/**
+	 * Forward command line arguments to the first instance and exit.
+	 * 
+	 * @param args optional lock directory option, APP_ID and the arguments to forward
+	 */
+	public static void main(String[] args) {
+		System.exit(forward(args));
+	}
+	
+	// forward arguments following APP_ID and get the exit code
+	static int forward(String[] args) {
+		// lock directory option
+		int first = 0;
+		LockStrategy lockStrategy;
+		if (args.length >= 2 && LOCK_DIR_OPTION.equals(args[0])) {
+			lockStrategy = new FileLockStrategy(new File(args[1]));
+			first = 2;
+		}
+		else {
+			lockStrategy = new FileLockStrategy();
+		}
+		
+		if (args.length == first) {
+			System.err.println("Usage: unique4j-client [" + LOCK_DIR_OPTION + " <directory>] <APP_ID> [arguments...]");
+			return EXIT_FAILED;
+		}
+		
+		String[] forwarded = new String[args.length - first - 1];
+		System.arraycopy(args, first + 1, forwarded, 0, forwarded.length);
+		
+		try {
+			return Unique4jLauncher.forward(lockStrategy, args[first], forwarded) ? EXIT_DELIVERED : EXIT_NOT_RUNNING;
+		} catch (Unique4jException e) {
+			System.err.println(e.getMessage());
+			return EXIT_FAILED;
+		}
+	}
+	
+	/**
+	 * Check whether a first instance is running.<br><br>
+	 * 
+	 * The check only tests the liveness lock which the first instance holds in its lock file.
+	 * It neither opens a socket nor writes anything, so it is cheap enough for frequent status probes,
+	 * and it leaves the election lock alone, so it cannot disturb a concurrent election.
+	 * A lock file left behind by a crashed first instance is not reported as running.
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @return true if a first instance holds the lock, false otherwise
+	 * @throws Unique4jException throws Unique4jException if the lock file cannot be checked
+	 */
+	public static boolean isRunning(String APP_ID) throws Unique4jException {
+		return isRunning(new FileLockStrategy(), APP_ID);
+	}
+	
+	/**
+	 * Check whether a first instance elected by a lock strategy is running.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @return true if a first instance holds the lock, false otherwise
+	 * @throws Unique4jException throws Unique4jException if the lock cannot be checked
+	 * @see #isRunning(String)
+	 */
+	public static boolean isRunning(LockStrategy lockStrategy, String APP_ID) throws Unique4jException {
+		try {
+			return lockStrategy.isLocked(APP_ID);
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+	/**
+	 * Measure the round-trip times of the first instance.<br><br>
+	 * 
+	 * The ping is answered on the connection thread of the first instance and never reaches <code>receiveMessage()</code>.
+	 * It can be used as a health check or to warm up the first instance.
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the measured times, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the first instance fails to answer
+	 */
+	public static PingResult ping(String APP_ID) throws Unique4jException {
+		return ping(new FileLockStrategy(), APP_ID);
+	}
+	
+	/**
+	 * Measure the round-trip times of a first instance elected by a lock strategy.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the measured times, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the first instance fails to answer
+	 * @see #ping(String)
+	 */
+	public static PingResult ping(LockStrategy lockStrategy, String APP_ID) throws Unique4jException {
+		return ping(lockStrategy, new LoopbackTransport(), APP_ID);
+	}
+	
+	/**
+	 * Measure the round-trip times of a first instance elected by a lock strategy and reached through a transport.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param transport transport of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the measured times, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the first instance fails to answer
+	 * @see #ping(String)
+	 */
+	public static PingResult ping(LockStrategy lockStrategy, Transport transport, String APP_ID) throws Unique4jException {
+		int port = Protocol.parsePort(resolve(lockStrategy, APP_ID));
+		if (port == -1) {
+			return null;
+		}
+		
+		byte[] appIdFrame = MessageCodec.encodeFrame(APP_ID);
+		ByteBuffer request = ByteBuffer.wrap(Protocol.controlFrame(Protocol.PING, appIdFrame));
+		
+		// try to establish connection to server
+		long start = System.nanoTime();
+		SocketChannel socket;
+		try {
+			socket = transport.connect(port);
+		} catch (IOException e) {
+			// stale lock file
+			return null;
+		}
+		long connected = System.nanoTime();
+		
+		try {
+			// send ping and validate the first instance
+			Protocol.writeFully(socket, request);
+			ByteBuffer response = ByteBuffer.allocate(appIdFrame.length);
+			if (!Protocol.readAppId(socket, response, appIdFrame)) {
+				// port belongs to another application
+				return null;
+			}
+			DeliveryStatus status = Protocol.readResponseStatus(socket, response);
+			if (status != DeliveryStatus.ACCEPTED) {
+				throw new Unique4jException("Ping refused by first instance: " + status);
+			}
+			long validated = System.nanoTime();
+			
+			// send probe and wait for the echo
+			ByteBuffer probe = ByteBuffer.allocate(Protocol.LONG_BYTES);
+			probe.putLong(0, validated);
+			Protocol.writeFully(socket, probe);
+			probe.clear();
+			Protocol.readFully(socket, probe);
+			if (probe.getLong(0) != validated) {
+				throw new Unique4jException("Invalid ping reply from first instance");
+			}
+			long replied = System.nanoTime();
+			
+			return new PingResult(port, connected - start, validated - connected, replied - validated);
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+	
+	/**
+	 * Send a message to the first instance.
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @param message message to send, may be null
+	 * @return the delivery status, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static DeliveryStatus send(String APP_ID, String message) throws Unique4jException {
+		return send(new FileLockStrategy(), APP_ID, message);
+	}
+	
+	/**
+	 * Send a message to a first instance elected by a lock strategy.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @param message message to send, may be null
+	 * @return the delivery status, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static DeliveryStatus send(LockStrategy lockStrategy, String APP_ID, String message) throws Unique4jException {
+		return send(lockStrategy, new LoopbackTransport(), APP_ID, message);
+	}
+	
+	/**
+	 * Send a message to a first instance elected by a lock strategy and reached through a transport.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param transport transport of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @param message message to send, may be null
+	 * @return the delivery status, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static DeliveryStatus send(LockStrategy lockStrategy, Transport transport, String APP_ID, String message) throws Unique4jException {
+		return sendBytes(lockStrategy, transport, APP_ID, (message == null) ? null : message.getBytes(MessageCodec.CHARSET));
+	}
+	
+	/**
+	 * Send raw bytes to the first instance.
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @param message bytes to send, may be null
+	 * @return the delivery status, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static DeliveryStatus sendBytes(String APP_ID, byte[] message) throws Unique4jException {
+		return sendBytes(new FileLockStrategy(), APP_ID, message);
+	}
+	
+	/**
+	 * Send raw bytes to a first instance elected by a lock strategy.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @param message bytes to send, may be null
+	 * @return the delivery status, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static DeliveryStatus sendBytes(LockStrategy lockStrategy, String APP_ID, byte[] message) throws Unique4jException {
+		return sendBytes(lockStrategy, new LoopbackTransport(), APP_ID, message);
+	}
+	
+	/**
+	 * Send raw bytes to a first instance elected by a lock strategy and reached through a transport.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param transport transport of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @param message bytes to send, may be null
+	 * @return the delivery status, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static DeliveryStatus sendBytes(LockStrategy lockStrategy, Transport transport, String APP_ID, byte[] message) throws Unique4jException {
+		// frame message once
+		ByteBuffer request = ByteBuffer.allocate(Protocol.INT_BYTES + ((message == null) ? 0 : message.length));
+		request.putInt((message == null) ? -1 : message.length);
+		if (message != null) {
+			request.put(message);
+		}
+		request.flip();
+		
+		byte[] appIdFrame = MessageCodec.encodeFrame(APP_ID);
+		ByteBuffer response = ByteBuffer.allocate(appIdFrame.length);
+		
+		// follow the endpoint as long as it names a different port
+		int port = -1;
+		IOException failure = null;
+		while (true) {
+			String endpoint = resolve(lockStrategy, APP_ID);
+			int current = Protocol.parsePort(endpoint);
+			
+			if (current == -1 || current == port) {
+				// no other port to try
+				if (failure != null) {
+					throw new Unique4jException(failure);
+				}
+				return null;
+			}
+			port = current;
+			
+			// try to establish connection to server
+			SocketChannel socket;
+			try {
+				socket = transport.connect(port);
+			} catch (IOException e) {
+				// stale lock file
+				continue;
+			}
+			
+			try {
+				// write message to server
+				// a rejecting server may close the connection before reading everything
+				IOException writeException = null;
+				try {
+					// a shared host needs the APP_ID to route the message
+					if (Protocol.parseHosted(endpoint)) {
+						Protocol.writeFully(socket, ByteBuffer.wrap(Protocol.controlFrame(Protocol.ROUTED, appIdFrame)));
+					}
+					Protocol.writeFully(socket, request.duplicate());
+				} catch (IOException e) {
+					writeException = e;
+				}
+				
+				// read response from server and validate it
+				boolean valid;
+				try {
+					valid = Protocol.readAppId(socket, response, appIdFrame);
+				} catch (IOException e) {
+					// the first instance may have handed over before accepting the connection
+					failure = (writeException != null) ? writeException : e;
+					continue;
+				}
+				
+				if (!valid) {
+					// port belongs to another application
+					return null;
+				}
+				
+				return Protocol.readResponseStatus(socket, response);
+			} catch (IOException e) {
+				throw new Unique4jException(e);
+			} finally {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+	}
+	
+	// resolve the endpoint of the first instance
+	private static String resolve(LockStrategy lockStrategy, String APP_ID) throws Unique4jException {
+		try {
+			return lockStrategy.resolve(APP_ID);
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+	
+}
@@ -0,0 +1,312 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Keep-alive connection to a running first instance for processes which send messages repeatedly.<br><br>
+ * 
+ * The first instance is discovered through its lock strategy and validated once when the connection is opened.
+ * After that every message costs a single frame write and a 4 byte status read.
+ * Several messages can be pipelined with <code>sendAll()</code>, which writes all frames before reading any status.<br><br>
+ * 
+ * If the first instance dies or hands over, the connection re-resolves the first instance through the lock strategy
+ * and sends the messages without a status once more. Messages may therefore be delivered more than once.<br><br>
+ * 
+ * The connection never becomes the first instance itself. The first instance must use the dynamic port policy.
+ * Instances of this class are thread safe.<br><br>
+ * 
+ * Sample usage:
+ * <pre>
+ *	// unique application ID
+ *	String APP_ID = "in.pratanumandal.unique4j-mlsdvo-20191511-#j.6";
+ *	
+ *	// open connection to the first instance
+ *	Unique4jConnection connection = new Unique4jConnection(APP_ID);
+ *	
+ *	try {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;connection.send("Message 1");
+ *	&nbsp;&nbsp;&nbsp;&nbsp;connection.send("Message 2");
+ *	} finally {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;connection.close();
+ *	}
+ * </pre>
+ * 
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class Unique4jConnection implements Closeable {
+	
+	/**
+	 * Unique string representing the application ID.
+	 */
+	public final String APP_ID;
+	
+	// lock strategy of the first instance
+	private final LockStrategy lockStrategy;
+	
+	// transport of the first instance
+	private final Transport transport;
+	
+	// APP_ID frame expected from the first instance
+	private final byte[] appIdFrame;
+	
+	// pre-encoded session request
+	private final byte[] sessionFrame;
+	
+	// buffer for status codes
+	private final ByteBuffer status;
+	
+	// open session, or null
+	private SocketChannel socket;
+	
+	/**
+	 * Parameterized constructor.<br>
+	 * The connection is opened lazily by the first message.
+	 * The first instance is resolved through lock files in the default lock directory.
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 */
+	public Unique4jConnection(final String APP_ID) {
+		this(new FileLockStrategy(), APP_ID);
+	}
+	
+	/**
+	 * Parameterized constructor.<br>
+	 * The connection is opened lazily by the first message.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 */
+	public Unique4jConnection(final LockStrategy lockStrategy, final String APP_ID) {
+		this(lockStrategy, new LoopbackTransport(), APP_ID);
+	}
+	
+	/**
+	 * Parameterized constructor.<br>
+	 * The connection is opened lazily by the first message.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param transport transport of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 */
+	public Unique4jConnection(final LockStrategy lockStrategy, final Transport transport, final String APP_ID) {
+		this.APP_ID = APP_ID;
+		this.lockStrategy = lockStrategy;
+		this.transport = transport;
+		
+		this.appIdFrame = MessageCodec.encodeFrame(APP_ID);
+		this.sessionFrame = Protocol.controlFrame(Protocol.SESSION, appIdFrame);
+		this.status = ByteBuffer.allocate(Protocol.INT_BYTES);
+	}
+	
+	/**
+	 * Send a message to the first instance.
+	 * 
+	 * @param message message to send, may be null
+	 * @return the delivery status, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public DeliveryStatus send(String message) throws Unique4jException {
+		return sendBytes((message == null) ? null : message.getBytes(MessageCodec.CHARSET));
+	}
+	
+	/**
+	 * Send raw bytes to the first instance.
+	 * 
+	 * @param message bytes to send, may be null
+	 * @return the delivery status, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public DeliveryStatus sendBytes(byte[] message) throws Unique4jException {
+		return transmit(new ByteBuffer[] { frame(message) })[0];
+	}
+	
+	/**
+	 * Send several messages to the first instance in a single pipelined write.
+	 * 
+	 * @param messages messages to send, may contain null
+	 * @return the delivery status of each message in order, or null entries if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public List<DeliveryStatus> sendAll(List<String> messages) throws Unique4jException {
+		ByteBuffer[] frames = new ByteBuffer[messages.size()];
+		for (int i = 0; i < frames.length; i++) {
+			String message = messages.get(i);
+			frames[i] = frame((message == null) ? null : message.getBytes(MessageCodec.CHARSET));
+		}
+		
+		return new ArrayList<DeliveryStatus>(Arrays.asList(transmit(frames)));
+	}
+	
+	/**
+	 * Close the connection. A closed connection is reopened by the next message.
+	 */
+	@Override
+	public synchronized void close() {
+		if (socket != null) {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				// ignore
+			}
+			socket = null;
+		}
+	}
+	
+	// frame a message
+	private static ByteBuffer frame(byte[] message) {
+		ByteBuffer frame = ByteBuffer.allocate(Protocol.INT_BYTES + ((message == null) ? 0 : message.length));
+		frame.putInt((message == null) ? -1 : message.length);
+		if (message != null) {
+			frame.put(message);
+		}
+		frame.flip();
+		return frame;
+	}
+	
+	// write frames and read their statuses, resending unanswered frames once after the first instance has changed
+	private synchronized DeliveryStatus[] transmit(ByteBuffer[] frames) throws Unique4jException {
+		DeliveryStatus[] statuses = new DeliveryStatus[frames.length];
+		int answered = 0;
+		boolean retried = false;
+		
+		while (answered < frames.length) {
+			// open session if required
+			if (socket == null && !open()) {
+				// no first instance running
+				return statuses;
+			}
+			
+			try {
+				// write all unanswered frames at once
+				ByteBuffer[] pending = new ByteBuffer[frames.length - answered];
+				for (int i = 0; i < pending.length; i++) {
+					pending[i] = frames[answered + i].duplicate();
+				}
+				while (pending[pending.length - 1].hasRemaining()) {
+					socket.write(pending);
+				}
+				
+				// read statuses in order
+				while (answered < frames.length) {
+					statuses[answered] = readStatus();
+					answered++;
+				}
+			} catch (IOException e) {
+				// first instance died or handed over
+				close();
+				if (retried) {
+					throw new Unique4jException(e);
+				}
+				retried = true;
+			}
+		}
+		
+		return statuses;
+	}
+	
+	// open a session with the first instance, false if there is none
+	private boolean open() throws Unique4jException {
+		socket = open(lockStrategy, transport, APP_ID, sessionFrame, appIdFrame);
+		return socket != null;
+	}
+	
+	/**
+	 * Open a validated connection to the first instance resolved through a lock strategy.<br>
+	 * The endpoint is followed as long as it names a different port.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param transport transport of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @param request control frame to send
+	 * @param appIdFrame APP_ID frame expected in the response
+	 * @return the connection, or null if no first instance is running
+	 * @throws Unique4jException if the first instance fails or refuses the request
+	 */
+	static SocketChannel open(LockStrategy lockStrategy, Transport transport, String APP_ID, byte[] request, byte[] appIdFrame) throws Unique4jException {
+		int port = -1;
+		while (true) {
+			int current;
+			try {
+				current = Protocol.parsePort(lockStrategy.resolve(APP_ID));
+			} catch (IOException e) {
+				throw new Unique4jException(e);
+			}
+			
+			if (current == -1 || current == port) {
+				// no other port to try
+				return null;
+			}
+			port = current;
+			
+			// try to establish connection to server
+			SocketChannel channel;
+			try {
+				channel = transport.connect(port);
+			} catch (IOException e) {
+				// stale lock file
+				continue;
+			}
+			
+			boolean valid = false;
+			try {
+				// send request and validate the first instance once
+				Protocol.writeFully(channel, ByteBuffer.wrap(request));
+				ByteBuffer response = ByteBuffer.allocate(appIdFrame.length);
+				if (!Protocol.readAppId(channel, response, appIdFrame)) {
+					// port belongs to another application
+					return null;
+				}
+				
+				DeliveryStatus status = Protocol.readStatus(channel, response);
+				if (status != DeliveryStatus.ACCEPTED) {
+					throw new Unique4jException("Request refused by first instance: " + status);
+				}
+				
+				valid = true;
+				return channel;
+			} catch (IOException e) {
+				throw new Unique4jException(e);
+			} finally {
+				if (!valid) {
+					try {
+						channel.close();
+					} catch (IOException e) {
+						// ignore
+					}
+				}
+			}
+		}
+	}
+	
+	// read a status code from the open session
+	private DeliveryStatus readStatus() throws IOException, Unique4jException {
+		return Protocol.readStatus(socket, status);
+	}
+	
+}
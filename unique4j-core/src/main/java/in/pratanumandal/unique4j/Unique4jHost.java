@@ -0,0 +1,244 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Process-wide server shared by all hosted first instances of this JVM.<br><br>
+ *
+ * Hosted first instances do not open a server socket of their own. Their lock files point to the port of the host
+ * and carry the <code>hosted</code> flag, so that subsequent instances prefix their messages with a routing header.
+ * The host reads the APP_ID of every control frame and passes the connection on to the first instance registered for it.<br><br>
+ *
+ * The host listens while at least one first instance uses it.
+ * Failures to accept connections are reported to the exception handlers of all first instances using the host.
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+final class Unique4jHost {
+
+	// starting position of port check
+	private static final int PORT_START = 3000;
+
+	// longest APP_ID accepted in a routing header
+	private static final int MAX_APP_ID_LENGTH = 4096;
+
+	// response frame sent for unknown APP_IDs
+	private static final byte[] UNKNOWN = MessageCodec.encodeFrame(null);
+
+	// guards the host state
+	private static final Object LOCK = new Object();
+
+	// hosted first instances by APP_ID
+	private static final Map<String, Unique4j> HOSTED = new HashMap<String, Unique4j>();
+
+	// first instances using the host, whether registered or not
+	private static final Set<Unique4j> USERS = Collections.newSetFromMap(new IdentityHashMap<Unique4j, Boolean>());
+
+	// shared server socket channel
+	private static ServerSocketChannel server;
+
+	private Unique4jHost() {}
+
+	/**
+	 * Get the shared server socket, starting the host if required.<br>
+	 * Every call must be paired with <code>release()</code>, also if the first instance fails to start.
+	 *
+	 * @param unique first instance using the host
+	 * @return the shared server socket
+	 */
+	static ServerSocketChannel acquire(Unique4j unique) {
+		synchronized (LOCK) {
+			if (server == null) {
+				server = open();
+				accept(server);
+			}
+			USERS.add(unique);
+			return server;
+		}
+	}
+
+	/**
+	 * Route connections for APP_ID to a first instance.
+	 *
+	 * @param APP_ID Unique string representing the application ID
+	 * @param unique first instance which has acquired the shared server socket
+	 */
+	static void register(String APP_ID, Unique4j unique) {
+		synchronized (LOCK) {
+			HOSTED.put(APP_ID, unique);
+		}
+	}
+
+	/**
+	 * Stop routing connections to a first instance and give up its use of the host.<br>
+	 * The shared server socket is closed once no first instance uses it. Repeated calls have no effect.
+	 *
+	 * @param APP_ID Unique string representing the application ID
+	 * @param unique first instance which has acquired the shared server socket
+	 * @throws IOException if the shared server socket cannot be closed
+	 */
+	static void release(String APP_ID, Unique4j unique) throws IOException {
+		synchronized (LOCK) {
+			// the first instance may have failed before registering
+			if (HOSTED.get(APP_ID) == unique) {
+				HOSTED.remove(APP_ID);
+			}
+
+			if (!USERS.remove(unique)) {
+				return;
+			}
+
+			if (USERS.isEmpty()) {
+				server.close();
+				server = null;
+			}
+		}
+	}
+
+	// open the shared server socket on the first free port
+	private static ServerSocketChannel open() {
+		int port = PORT_START;
+		while (true) {
+			ServerSocketChannel channel = null;
+			try {
+				channel = ServerSocketChannel.open();
+				channel.socket().bind(Protocol.address(port), 0);
+				return channel;
+			} catch (IOException e) {
+				try {
+					if (channel != null) channel.close();
+				} catch (IOException ex) {
+					// ignore
+				}
+				port++;
+			}
+		}
+	}
+
+	// accept connections on a single thread for all hosted first instances
+	private static void accept(final ServerSocketChannel server) {
+		Thread thread = new Thread("Unique4j-host") {
+			@Override
+			public void run() {
+				// pause after consecutive failures
+				long backoff = 0;
+				
+				while (server.isOpen()) {
+					try {
+						// establish connection
+						final SocketChannel socket = server.accept();
+						backoff = 0;
+
+						// read the routing header on a different thread to allow parallel connections
+						Thread thread = new Thread("Unique4j-host-handler") {
+							@Override
+							public void run() {
+								route(socket);
+							}
+						};
+						thread.start();
+					} catch (ClosedChannelException e) {
+						// host stopped
+					} catch (IOException e) {
+						report(new Unique4jException(e));
+						
+						// keep accepting once the failure may have passed
+						try {
+							backoff = Protocol.backOff(backoff);
+						} catch (InterruptedException ex) {
+							return;
+						}
+					}
+				}
+			}
+		};
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	// report an exception of the host to all first instances using it
+	private static void report(Exception exception) {
+		Unique4j[] users;
+		synchronized (LOCK) {
+			users = USERS.toArray(new Unique4j[USERS.size()]);
+		}
+
+		for (Unique4j user : users) {
+			user.handleException(exception);
+		}
+	}
+
+	// read the routing header of a connection and pass it to the first instance of its APP_ID
+	private static void route(SocketChannel socket) {
+		Unique4j unique = null;
+		byte type = 0;
+
+		try {
+			// only control frames carry an APP_ID
+			ByteBuffer header = ByteBuffer.allocate(Protocol.INT_BYTES + 1 + Protocol.INT_BYTES);
+			Protocol.readFully(socket, header);
+
+			int length = header.getInt(Protocol.INT_BYTES + 1);
+			if (header.getInt(0) == Protocol.MAGIC && length >= 0 && length <= MAX_APP_ID_LENGTH) {
+				ByteBuffer appId = ByteBuffer.allocate(length);
+				Protocol.readFully(socket, appId);
+				appId.flip();
+
+				type = header.get(Protocol.INT_BYTES);
+				synchronized (LOCK) {
+					unique = HOSTED.get(MessageCodec.CHARSET.decode(appId).toString());
+				}
+			}
+
+			if (unique == null) {
+				// let the subsequent instance find out that its first instance is gone
+				Protocol.writeFully(socket, ByteBuffer.wrap(UNKNOWN));
+			}
+		} catch (IOException e) {
+			// client went away
+		} finally {
+			if (unique == null) {
+				try {
+					socket.close();
+				} catch (IOException e) {
+					// ignore
+				}
+			}
+		}
+
+		if (unique != null) {
+			unique.handleRouted(socket, type);
+		}
+	}
+
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.util.Enumeration;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Dependency free launcher which forwards the command line arguments to a running first instance
+ * before the application is loaded.<br><br>
+ * 
+ * Use this class as the <code>Main-Class</code> of the application jar. If a first instance is running,
+ * the arguments are sent to it as a JSON array, which is the format expected by <code>Unique4jList</code>, and the launcher exits.
+ * Otherwise the real main class is started reflectively with the same arguments.
+ * Only a handful of library classes are loaded on the forwarding path.<br><br>
+ * 
+ * The launcher is configured by the system properties <code>unique4j.appId</code> and <code>unique4j.mainClass</code>,
+ * or by the manifest attributes <code>Unique4j-App-Id</code> and <code>Unique4j-Main-Class</code>.
+ * A first instance using a lock directory other than the default one is found through the system property <code>unique4j.lockDir</code>
+ * or the manifest attribute <code>Unique4j-Lock-Dir</code>.<br><br>
+ * 
+ * Sample manifest:
+ * <pre>
+ *	Main-Class: in.pratanumandal.unique4j.Unique4jLauncher
+ *	Unique4j-App-Id: in.pratanumandal.unique4j-mlsdvo-20191511-#j.6
+ *	Unique4j-Main-Class: com.example.Main
+ * </pre>
+ * 
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class Unique4jLauncher {
+	
+	// system property and manifest attribute holding APP_ID
+	private static final String APP_ID_PROPERTY = "unique4j.appId";
+	private static final String APP_ID_ATTRIBUTE = "Unique4j-App-Id";
+	
+	// system property and manifest attribute holding the real main class
+	private static final String MAIN_CLASS_PROPERTY = "unique4j.mainClass";
+	private static final String MAIN_CLASS_ATTRIBUTE = "Unique4j-Main-Class";
+	
+	// manifest attribute holding the lock directory
+	private static final String LOCK_DIR_ATTRIBUTE = "Unique4j-Lock-Dir";
+	
+	private Unique4jLauncher() {}
+	
+	/**
+	 * Forward the arguments to a running first instance, or start the real main class.
+	 * 
+	 * @param args command line arguments
+	 * @throws Exception any exception thrown by the real main class
+	 */
+	public static void main(String[] args) throws Exception {
+		String appId = System.getProperty(APP_ID_PROPERTY);
+		String mainClass = System.getProperty(MAIN_CLASS_PROPERTY);
+		String lockDir = System.getProperty(LockDirectories.PROPERTY);
+		
+		// fall back to the manifest
+		if (appId == null || mainClass == null || lockDir == null) {
+			Attributes attributes = readManifest();
+			if (attributes != null) {
+				if (appId == null) appId = attributes.getValue(APP_ID_ATTRIBUTE);
+				if (mainClass == null) mainClass = attributes.getValue(MAIN_CLASS_ATTRIBUTE);
+				if (lockDir == null) lockDir = attributes.getValue(LOCK_DIR_ATTRIBUTE);
+			}
+		}
+		
+		if (appId == null || mainClass == null) {
+			throw new IllegalStateException("Unique4j launcher requires " + APP_ID_ATTRIBUTE + " and " + MAIN_CLASS_ATTRIBUTE);
+		}
+		
+		// try to forward arguments to the first instance
+		boolean forwarded;
+		try {
+			LockStrategy lockStrategy = (lockDir == null) ? new FileLockStrategy() : new FileLockStrategy(new File(lockDir));
+			forwarded = forward(lockStrategy, appId, args);
+		} catch (Unique4jException e) {
+			// let the application decide
+			forwarded = false;
+		}
+		
+		if (forwarded) {
+			System.exit(0);
+		}
+		else {
+			start(mainClass, args);
+		}
+	}
+	
+	/**
+	 * Forward arguments to a running first instance as a JSON array.
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @param args arguments to forward
+	 * @return true if the first instance has accepted the arguments, false if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection fails or the first instance rejects the arguments
+	 */
+	public static boolean forward(String APP_ID, String[] args) throws Unique4jException {
+		return forward(new FileLockStrategy(), APP_ID, args);
+	}
+	
+	/**
+	 * Forward arguments to a running first instance elected by a lock strategy as a JSON array.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @param args arguments to forward
+	 * @return true if the first instance has accepted the arguments, false if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection fails or the first instance rejects the arguments
+	 */
+	public static boolean forward(LockStrategy lockStrategy, String APP_ID, String[] args) throws Unique4jException {
+		DeliveryStatus status = Unique4jClient.sendBytes(lockStrategy, APP_ID, toJson(args).getBytes(MessageCodec.CHARSET));
+		if (status == null) {
+			return false;
+		}
+		
+		if (!status.isSuccessful()) {
+			throw new Unique4jException("Message not delivered to first instance: " + status);
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Start the real main class in this JVM.
+	 * 
+	 * @param mainClass fully qualified name of the real main class
+	 * @param args command line arguments
+	 * @throws Exception any exception thrown by the real main class
+	 */
+	public static void start(String mainClass, String[] args) throws Exception {
+		Method main = Class.forName(mainClass).getMethod("main", String[].class);
+		try {
+			main.invoke(null, (Object) args);
+		} catch (InvocationTargetException e) {
+			// rethrow the exception of the real main class
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) throw (Exception) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
+	
+	// encode arguments as a JSON array of strings
+	static String toJson(String[] args) {
+		StringBuilder json = new StringBuilder("[");
+		for (int i = 0; i < args.length; i++) {
+			if (i > 0) json.append(',');
+			
+			if (args[i] == null) {
+				json.append("null");
+				continue;
+			}
+			
+			json.append('"');
+			for (int j = 0; j < args[i].length(); j++) {
+				char c = args[i].charAt(j);
+				switch (c) {
+					case '"': json.append("\\\""); break;
+					case '\\': json.append("\\\\"); break;
+					case '\n': json.append("\\n"); break;
+					case '\r': json.append("\\r"); break;
+					case '\t': json.append("\\t"); break;
+					case '\b': json.append("\\b"); break;
+					case '\f': json.append("\\f"); break;
+					default:
+						if (c < 0x20) {
+							json.append(String.format("\\u%04x", (int) c));
+						}
+						else {
+							json.append(c);
+						}
+				}
+			}
+			json.append('"');
+		}
+		return json.append(']').toString();
+	}
+	
+	// find the first manifest naming the real main class
+	private static Attributes readManifest() throws IOException {
+		Enumeration<URL> manifests = Unique4jLauncher.class.getClassLoader().getResources("META-INF/MANIFEST.MF");
+		while (manifests.hasMoreElements()) {
+			InputStream in = manifests.nextElement().openStream();
+			try {
+				Attributes attributes = new Manifest(in).getMainAttributes();
+				if (attributes.getValue(MAIN_CLASS_ATTRIBUTE) != null) {
+					return attributes;
+				}
+			} finally {
+				in.close();
+			}
+		}
+		
+		return null;
+	}
+	
+}
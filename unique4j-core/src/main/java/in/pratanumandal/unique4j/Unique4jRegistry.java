@@ -0,0 +1,466 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.ArrayList;
+import java.util.List;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Machine-wide registry of running first instances.<br><br>
+ *
+ * The registry is a single memory-mapped table in the default lock directory shared by all Unique4j applications.
+ * First instances which have opted in with <code>Unique4j.setRegistered(true)</code> publish their port, process ID,
+ * start time and a heartbeat in the slot of their hashed APP_ID.
+ * Tools can enumerate running first instances without listing the lock directory,
+ * and subsequent instances can resolve their first instance with a single read of the mapped table.<br><br>
+ *
+ * Slots are claimed and freed under an exclusive lock on the registry header, which serializes writers across processes.
+ * The heartbeat of a slot is only written by its owner. Reads take no lock.
+ * Slots whose heartbeat has stopped, for example because their process crashed, are reclaimed by later writers.<br><br>
+ *
+ * Sample usage:
+ * <pre>
+ *	// list running first instances
+ *	for (Unique4jRegistry.Entry entry : Unique4jRegistry.entries()) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;System.out.println(entry);
+ *	}
+ * </pre>
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class Unique4jRegistry {
+
+	// name of the registry file
+	private static final String FILE_NAME = "unique4j.registry";
+
+	// identifies a registry file
+	private static final int MAGIC = 0x554A5247;
+
+	// number of slots in a new registry
+	private static final int CAPACITY = 1024;
+
+	// size of the header holding magic and capacity
+	private static final int HEADER_SIZE = 2 * Protocol.INT_BYTES;
+
+	// slot layout: state, hash, port, process ID, start time, heartbeat
+	private static final int STATE_OFFSET = 0;
+	private static final int HASH_OFFSET = STATE_OFFSET + Protocol.INT_BYTES;
+	private static final int PORT_OFFSET = HASH_OFFSET + Protocol.LONG_BYTES;
+	private static final int PID_OFFSET = PORT_OFFSET + Protocol.INT_BYTES;
+	private static final int STARTED_OFFSET = PID_OFFSET + Protocol.LONG_BYTES;
+	private static final int HEARTBEAT_OFFSET = STARTED_OFFSET + Protocol.LONG_BYTES;
+	private static final int SLOT_SIZE = HEARTBEAT_OFFSET + Protocol.LONG_BYTES;
+
+	// slot has never been used, ends a probe sequence
+	private static final int EMPTY = 0;
+
+	// slot holds a registered first instance
+	private static final int ACTIVE = 1;
+
+	// slot has been freed, continues a probe sequence
+	private static final int TOMBSTONE = 2;
+
+	/**
+	 * Interval in milliseconds at which registered first instances update their heartbeat.
+	 */
+	public static final long HEARTBEAT_INTERVAL = 1000;
+
+	// time after which a slot without heartbeat is considered dead
+	private static final long STALE_TIMEOUT = 5 * HEARTBEAT_INTERVAL;
+
+	// registry file RAF object
+	private static RandomAccessFile raf;
+
+	// mapped registry file
+	private static MappedByteBuffer buffer;
+
+	// number of slots
+	private static int capacity;
+
+	// process ID of this JVM
+	private static long pid;
+
+	private Unique4jRegistry() {}
+
+	/**
+	 * Registered first instance.
+	 *
+	 * @author Pratanu Mandal
+	 * @since 1.6
+	 */
+	public static final class Entry {
+
+		// hash of APP_ID
+		private final long hash;
+
+		// port of the first instance
+		private final int port;
+
+		// process ID of the first instance
+		private final long pid;
+
+		// registration time in milliseconds since the epoch
+		private final long started;
+
+		// last heartbeat in milliseconds since the epoch
+		private final long heartbeat;
+
+		Entry(long hash, int port, long pid, long started, long heartbeat) {
+			this.hash = hash;
+			this.port = port;
+			this.pid = pid;
+			this.started = started;
+			this.heartbeat = heartbeat;
+		}
+
+		/**
+		 * Get the hash of the APP_ID of the first instance.
+		 *
+		 * @return the hash, as returned by <code>Unique4jRegistry.hash()</code>
+		 */
+		public long getHash() {
+			return hash;
+		}
+
+		/**
+		 * Get the port of the first instance.
+		 *
+		 * @return the port
+		 */
+		public int getPort() {
+			return port;
+		}
+
+		/**
+		 * Get the process ID of the first instance.
+		 *
+		 * @return the process ID, or -1 if it is unknown
+		 */
+		public long getPid() {
+			return pid;
+		}
+
+		/**
+		 * Get the time at which the first instance registered.
+		 *
+		 * @return milliseconds since the epoch
+		 */
+		public long getStartTime() {
+			return started;
+		}
+
+		/**
+		 * Get the time of the last heartbeat of the first instance.
+		 *
+		 * @return milliseconds since the epoch
+		 */
+		public long getHeartbeat() {
+			return heartbeat;
+		}
+
+		/**
+		 * Check whether the first instance has updated its heartbeat recently.
+		 *
+		 * @return true if the heartbeat is current, false if the first instance has probably died
+		 */
+		public boolean isAlive() {
+			return System.currentTimeMillis() - heartbeat < STALE_TIMEOUT;
+		}
+
+		@Override
+		public String toString() {
+			return "Entry[hash=" + Long.toHexString(hash) + ", port=" + port + ", pid=" + pid + ", started=" + started
+					+ ", heartbeat=" + heartbeat + ", alive=" + isAlive() + "]";
+		}
+
+	}
+
+	/**
+	 * Resolve the first instance of an application.
+	 *
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the live first instance, or null if none is registered
+	 * @throws Unique4jException throws Unique4jException if the registry cannot be opened
+	 */
+	public static Entry resolve(String APP_ID) throws Unique4jException {
+		MappedByteBuffer buffer = open();
+		long hash = hash(APP_ID);
+
+		int start = (int) ((hash & Long.MAX_VALUE) % capacity);
+		for (int i = 0; i < capacity; i++) {
+			int slot = (start + i) % capacity;
+			int offset = HEADER_SIZE + slot * SLOT_SIZE;
+
+			int state = buffer.getInt(offset + STATE_OFFSET);
+			if (state == EMPTY) {
+				break;
+			}
+
+			if (state == ACTIVE && buffer.getLong(offset + HASH_OFFSET) == hash) {
+				Entry entry = read(buffer, offset);
+				return (entry != null && entry.isAlive()) ? entry : null;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Get all registered first instances, including those whose heartbeat has stopped.
+	 *
+	 * @return registered first instances
+	 * @throws Unique4jException throws Unique4jException if the registry cannot be opened
+	 */
+	public static List<Entry> entries() throws Unique4jException {
+		MappedByteBuffer buffer = open();
+
+		List<Entry> entries = new ArrayList<Entry>();
+		for (int slot = 0; slot < capacity; slot++) {
+			Entry entry = read(buffer, HEADER_SIZE + slot * SLOT_SIZE);
+			if (entry != null) {
+				entries.add(entry);
+			}
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Get the hash under which an APP_ID is registered.
+	 *
+	 * @param APP_ID Unique string representing the application ID
+	 * @return 64 bit FNV-1a hash of the UTF-8 bytes of APP_ID
+	 */
+	public static long hash(String APP_ID) {
+		return Protocol.hash(APP_ID);
+	}
+
+	/**
+	 * Register a first instance, replacing any previous registration of the same APP_ID.
+	 *
+	 * @param APP_ID Unique string representing the application ID
+	 * @param port port of the first instance
+	 * @return slot of the registration
+	 * @throws Unique4jException if the registry cannot be written or is full
+	 */
+	static int register(String APP_ID, int port) throws Unique4jException {
+		long hash = hash(APP_ID);
+
+		synchronized (Unique4jRegistry.class) {
+			MappedByteBuffer buffer = open();
+			FileLock lock = lockHeader();
+			try {
+				long now = System.currentTimeMillis();
+
+				// find the slot of APP_ID, or the first free slot of its probe sequence
+				int free = -1;
+				int start = (int) ((hash & Long.MAX_VALUE) % capacity);
+				for (int i = 0; i < capacity; i++) {
+					int slot = (start + i) % capacity;
+					int offset = HEADER_SIZE + slot * SLOT_SIZE;
+					int state = buffer.getInt(offset + STATE_OFFSET);
+
+					if (state == ACTIVE && buffer.getLong(offset + HASH_OFFSET) == hash) {
+						free = slot;
+						break;
+					}
+
+					// reclaim slots of dead first instances
+					boolean reusable = (state != ACTIVE) || (now - buffer.getLong(offset + HEARTBEAT_OFFSET) >= STALE_TIMEOUT);
+					if (reusable && free == -1) {
+						free = slot;
+					}
+
+					if (state == EMPTY) {
+						break;
+					}
+				}
+
+				if (free == -1) {
+					throw new Unique4jException("Registry is full");
+				}
+
+				// publish the slot once it is complete
+				int offset = HEADER_SIZE + free * SLOT_SIZE;
+				buffer.putInt(offset + STATE_OFFSET, TOMBSTONE);
+				buffer.putLong(offset + HASH_OFFSET, hash);
+				buffer.putInt(offset + PORT_OFFSET, port);
+				buffer.putLong(offset + PID_OFFSET, pid);
+				buffer.putLong(offset + STARTED_OFFSET, now);
+				buffer.putLong(offset + HEARTBEAT_OFFSET, now);
+				buffer.putInt(offset + STATE_OFFSET, ACTIVE);
+
+				return free;
+			} finally {
+				unlockHeader(lock);
+			}
+		}
+	}
+
+	/**
+	 * Update the heartbeat of a registration.
+	 *
+	 * @param slot slot returned by <code>register()</code>
+	 * @param port port of the registration
+	 * @return true if the registration is still owned by the caller, false otherwise
+	 * @throws Unique4jException if the registry cannot be opened
+	 */
+	static boolean heartbeat(int slot, int port) throws Unique4jException {
+		MappedByteBuffer buffer = open();
+		int offset = HEADER_SIZE + slot * SLOT_SIZE;
+
+		if (!owns(buffer, offset, port)) {
+			return false;
+		}
+
+		buffer.putLong(offset + HEARTBEAT_OFFSET, System.currentTimeMillis());
+		return true;
+	}
+
+	/**
+	 * Remove a registration if it is still owned by the caller.
+	 *
+	 * @param slot slot returned by <code>register()</code>
+	 * @param port port of the registration
+	 * @throws Unique4jException if the registry cannot be written
+	 */
+	static void unregister(int slot, int port) throws Unique4jException {
+		synchronized (Unique4jRegistry.class) {
+			MappedByteBuffer buffer = open();
+			FileLock lock = lockHeader();
+			try {
+				int offset = HEADER_SIZE + slot * SLOT_SIZE;
+				if (owns(buffer, offset, port)) {
+					buffer.putInt(offset + STATE_OFFSET, TOMBSTONE);
+				}
+			} finally {
+				unlockHeader(lock);
+			}
+		}
+	}
+
+	// check whether a slot is registered by this process with the given port
+	private static boolean owns(MappedByteBuffer buffer, int offset, int port) {
+		return buffer.getInt(offset + STATE_OFFSET) == ACTIVE
+				&& buffer.getInt(offset + PORT_OFFSET) == port
+				&& buffer.getLong(offset + PID_OFFSET) == pid;
+	}
+
+	// read an active slot, retrying if it changes while being read
+	private static Entry read(MappedByteBuffer buffer, int offset) {
+		while (true) {
+			if (buffer.getInt(offset + STATE_OFFSET) != ACTIVE) {
+				return null;
+			}
+
+			long hash = buffer.getLong(offset + HASH_OFFSET);
+			int port = buffer.getInt(offset + PORT_OFFSET);
+			long pid = buffer.getLong(offset + PID_OFFSET);
+			long started = buffer.getLong(offset + STARTED_OFFSET);
+			long heartbeat = buffer.getLong(offset + HEARTBEAT_OFFSET);
+
+			// slot has not been replaced while reading
+			if (buffer.getInt(offset + STATE_OFFSET) == ACTIVE && buffer.getLong(offset + HASH_OFFSET) == hash
+					&& buffer.getLong(offset + STARTED_OFFSET) == started) {
+				return new Entry(hash, port, pid, started, heartbeat);
+			}
+		}
+	}
+
+	// map the registry file, initializing it if required
+	private static synchronized MappedByteBuffer open() throws Unique4jException {
+		if (buffer != null) {
+			return buffer;
+		}
+
+		pid = Protocol.pid();
+
+		File file = new File(LockDirectories.getDefault(), FILE_NAME);
+		try {
+			raf = new RandomAccessFile(file, "rw");
+
+			FileLock lock = raf.getChannel().lock(0, HEADER_SIZE, false);
+			try {
+				// use the capacity of an existing registry
+				if (raf.length() >= HEADER_SIZE && readHeader(0) == MAGIC) {
+					capacity = readHeader(Protocol.INT_BYTES);
+				}
+				else {
+					capacity = CAPACITY;
+				}
+
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * SLOT_SIZE);
+
+				if (buffer.getInt(0) != MAGIC) {
+					// new or corrupted registry
+					for (int i = HEADER_SIZE; i < buffer.capacity(); i++) {
+						buffer.put(i, (byte) 0);
+					}
+					buffer.putInt(Protocol.INT_BYTES, capacity);
+					buffer.putInt(0, MAGIC);
+				}
+			} finally {
+				lock.release();
+			}
+
+			return buffer;
+		} catch (IOException e) {
+			buffer = null;
+			try {
+				raf.close();
+			} catch (IOException ex) {
+				// ignore
+			}
+			throw new Unique4jException(e);
+		}
+	}
+
+	// read an int from the header of the registry file
+	private static int readHeader(long position) throws IOException {
+		raf.seek(position);
+		return raf.readInt();
+	}
+
+	// lock the header to serialize writers across processes
+	private static FileLock lockHeader() throws Unique4jException {
+		try {
+			return raf.getChannel().lock(0, HEADER_SIZE, false);
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+
+	// release the header lock
+	private static void unlockHeader(FileLock lock) throws Unique4jException {
+		try {
+			lock.release();
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+	}
+
+}
@@ -0,0 +1,418 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Cross-process locks on named resources of one application, for example documents which must not be edited by two instances at once.<br><br>
+ *
+ * All resources of an application share one memory-mapped lock table in the default lock directory.
+ * Locking a resource takes a single exclusive region lock of the table file at a position derived from the hash of its name,
+ * instead of creating, locking and deleting a lock file per resource.
+ * The operating system drops the region locks of a process when it dies, so crashed processes never leave resources locked.<br><br>
+ *
+ * The table is striped by the hash of the resource name. The owner of a resource writes its process ID and lock time
+ * into the stripe of the resource, which allows other processes to find out who holds it.<br><br>
+ *
+ * Resource locks are held by the JVM, not by a thread, and are not reentrant:
+ * locking a resource which is already locked in this JVM fails until it is released.<br><br>
+ *
+ * Sample usage:
+ * <pre>
+ *	Unique4jResourceLocks locks = Unique4jResourceLocks.open(APP_ID);
+ *	Unique4jResourceLocks.ResourceLock lock = locks.lock("/documents/report.txt", 5, TimeUnit.SECONDS);
+ *	if (lock != null) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;try {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;// edit the document
+ *	&nbsp;&nbsp;&nbsp;&nbsp;} finally {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;lock.release();
+ *	&nbsp;&nbsp;&nbsp;&nbsp;}
+ *	}
+ * </pre>
+ *
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class Unique4jResourceLocks {
+
+	// identifies a lock table file
+	private static final int MAGIC = 0x554A524C;
+
+	// number of stripes in a new lock table
+	private static final int STRIPES = 4096;
+
+	// size of the header holding magic and number of stripes
+	private static final int HEADER_SIZE = 2 * Protocol.INT_BYTES;
+
+	// stripe layout: hash, process ID, lock time
+	private static final int HASH_OFFSET = 0;
+	private static final int PID_OFFSET = HASH_OFFSET + Protocol.LONG_BYTES;
+	private static final int LOCKED_OFFSET = PID_OFFSET + Protocol.LONG_BYTES;
+	private static final int STRIPE_SIZE = LOCKED_OFFSET + Protocol.LONG_BYTES;
+
+	// position of the resource lock regions, beyond any stripe data in the table file
+	private static final long LOCK_POSITION = 1L << 62;
+
+	// initial and maximum pause between attempts of a timed wait in milliseconds
+	private static final long MIN_BACKOFF = 1;
+	private static final long MAX_BACKOFF = 64;
+
+	// lock tables opened by this JVM
+	private static final Map<File, Unique4jResourceLocks> TABLES = new HashMap<File, Unique4jResourceLocks>();
+
+	// lock table file RAF object
+	private final RandomAccessFile raf;
+
+	// mapped lock table file
+	private final MappedByteBuffer buffer;
+
+	// number of stripes
+	private final int stripes;
+
+	// process ID of this JVM
+	private final long pid;
+
+	private Unique4jResourceLocks(File file) throws IOException {
+		this.raf = new RandomAccessFile(file, "rw");
+		this.pid = Protocol.pid();
+
+		try {
+			FileLock lock = raf.getChannel().lock(0, HEADER_SIZE, false);
+			try {
+				// use the number of stripes of an existing table
+				int stripes = STRIPES;
+				if (raf.length() >= HEADER_SIZE) {
+					raf.seek(0);
+					if (raf.readInt() == MAGIC) {
+						stripes = raf.readInt();
+					}
+				}
+				this.stripes = stripes;
+
+				buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) stripes * STRIPE_SIZE);
+
+				if (buffer.getInt(0) != MAGIC) {
+					// new or corrupted table
+					for (int i = HEADER_SIZE; i < buffer.capacity(); i++) {
+						buffer.put(i, (byte) 0);
+					}
+					buffer.putInt(Protocol.INT_BYTES, stripes);
+					buffer.putInt(0, MAGIC);
+				}
+			} finally {
+				lock.release();
+			}
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open the lock table of an application, creating it if required.<br>
+	 * All callers in this JVM share one lock table per application.
+	 *
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the lock table
+	 * @throws Unique4jException throws Unique4jException if the lock table cannot be opened
+	 */
+	public static Unique4jResourceLocks open(String APP_ID) throws Unique4jException {
+		return open(LockDirectories.getDefault(), APP_ID);
+	}
+
+	/**
+	 * Open the lock table of an application in a lock directory, creating it if required.<br>
+	 * All callers in this JVM share one lock table per application and lock directory.
+	 *
+	 * @param directory lock directory
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the lock table
+	 * @throws Unique4jException throws Unique4jException if the lock table cannot be opened
+	 */
+	public static Unique4jResourceLocks open(File directory, String APP_ID) throws Unique4jException {
+		File file = new File(directory, APP_ID + ".resources");
+
+		synchronized (TABLES) {
+			Unique4jResourceLocks locks = TABLES.get(file);
+			if (locks == null) {
+				try {
+					locks = new Unique4jResourceLocks(file);
+				} catch (IOException e) {
+					throw new Unique4jException(e);
+				}
+				TABLES.put(file, locks);
+			}
+			return locks;
+		}
+	}
+
+	/**
+	 * Lock on a named resource held by this JVM.
+	 *
+	 * @author Pratanu Mandal
+	 * @since 1.6
+	 */
+	public final class ResourceLock {
+
+		// name of the resource
+		private final String name;
+
+		// hash of the name
+		private final long hash;
+
+		// region lock of the resource
+		private final FileLock lock;
+
+		private ResourceLock(String name, long hash, FileLock lock) {
+			this.name = name;
+			this.hash = hash;
+			this.lock = lock;
+		}
+
+		/**
+		 * Get the name of the locked resource.
+		 *
+		 * @return the name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Check whether the lock is still held.
+		 *
+		 * @return true if the lock has not been released
+		 */
+		public boolean isValid() {
+			return lock.isValid();
+		}
+
+		/**
+		 * Release the lock. Repeated calls have no effect.
+		 *
+		 * @throws Unique4jException throws Unique4jException if the lock cannot be released
+		 */
+		public void release() throws Unique4jException {
+			synchronized (Unique4jResourceLocks.this) {
+				if (!lock.isValid()) {
+					return;
+				}
+
+				// clear the owner while still holding the lock, unless another resource of the stripe has overwritten it
+				int offset = offset(hash);
+				if (buffer.getLong(offset + HASH_OFFSET) == hash && buffer.getLong(offset + PID_OFFSET) == pid) {
+					buffer.putLong(offset + HASH_OFFSET, 0);
+				}
+
+				try {
+					lock.release();
+				} catch (IOException e) {
+					throw new Unique4jException(e);
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "ResourceLock[name=" + name + ", valid=" + isValid() + "]";
+		}
+
+	}
+
+	/**
+	 * Owner of a locked resource.
+	 *
+	 * @author Pratanu Mandal
+	 * @since 1.6
+	 */
+	public static final class Owner {
+
+		// process ID of the owner
+		private final long pid;
+
+		// lock time in milliseconds since the epoch
+		private final long locked;
+
+		Owner(long pid, long locked) {
+			this.pid = pid;
+			this.locked = locked;
+		}
+
+		/**
+		 * Get the process ID of the owner.
+		 *
+		 * @return the process ID, or -1 if it is unknown
+		 */
+		public long getPid() {
+			return pid;
+		}
+
+		/**
+		 * Get the time at which the owner locked the resource.
+		 *
+		 * @return milliseconds since the epoch, or -1 if it is unknown
+		 */
+		public long getLockTime() {
+			return locked;
+		}
+
+		@Override
+		public String toString() {
+			return "Owner[pid=" + pid + ", locked=" + locked + "]";
+		}
+
+	}
+
+	/**
+	 * Try to lock a resource without waiting.
+	 *
+	 * @param name name of the resource
+	 * @return the lock, or null if the resource is locked by another process or in this JVM
+	 * @throws Unique4jException throws Unique4jException if the lock table cannot be locked
+	 */
+	public synchronized ResourceLock tryLock(String name) throws Unique4jException {
+		long hash = Protocol.hash(name);
+
+		FileLock lock;
+		try {
+			lock = raf.getChannel().tryLock(position(hash), 1, false);
+		} catch (OverlappingFileLockException e) {
+			// held in this JVM
+			return null;
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+
+		if (lock == null) {
+			return null;
+		}
+
+		// publish the owner once it is complete
+		int offset = offset(hash);
+		buffer.putLong(offset + HASH_OFFSET, 0);
+		buffer.putLong(offset + PID_OFFSET, pid);
+		buffer.putLong(offset + LOCKED_OFFSET, System.currentTimeMillis());
+		buffer.putLong(offset + HASH_OFFSET, hash);
+
+		return new ResourceLock(name, hash, lock);
+	}
+
+	/**
+	 * Lock a resource, waiting for at most the given time.<br>
+	 * The resource is polled with an increasing pause between attempts.
+	 *
+	 * @param name name of the resource
+	 * @param timeout maximum time to wait
+	 * @param unit time unit of the timeout argument
+	 * @return the lock, or null if the timeout elapsed
+	 * @throws Unique4jException throws Unique4jException if the lock table cannot be locked or the thread is interrupted
+	 */
+	public ResourceLock lock(String name, long timeout, TimeUnit unit) throws Unique4jException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		long backoff = MIN_BACKOFF;
+
+		while (true) {
+			ResourceLock lock = tryLock(name);
+			if (lock != null) {
+				return lock;
+			}
+
+			long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+			if (remaining <= 0) {
+				return null;
+			}
+
+			try {
+				Thread.sleep(Math.min(backoff, remaining));
+			} catch (InterruptedException e) {
+				throw new Unique4jException(e);
+			}
+			backoff = Math.min(2 * backoff, MAX_BACKOFF);
+		}
+	}
+
+	/**
+	 * Get the owner of a resource.<br>
+	 * The resource is probed with a short lived region lock, during which other processes cannot lock it.
+	 *
+	 * @param name name of the resource
+	 * @return the owner, or null if the resource is not locked
+	 * @throws Unique4jException throws Unique4jException if the lock table cannot be locked
+	 */
+	public synchronized Owner getOwner(String name) throws Unique4jException {
+		long hash = Protocol.hash(name);
+
+		try {
+			FileLock probe = raf.getChannel().tryLock(position(hash), 1, true);
+			if (probe != null) {
+				probe.release();
+				return null;
+			}
+		} catch (OverlappingFileLockException e) {
+			// held in this JVM
+		} catch (IOException e) {
+			throw new Unique4jException(e);
+		}
+
+		// read the owner, unless it has not been published yet or is being replaced
+		int offset = offset(hash);
+		if (buffer.getLong(offset + HASH_OFFSET) == hash) {
+			long pid = buffer.getLong(offset + PID_OFFSET);
+			long locked = buffer.getLong(offset + LOCKED_OFFSET);
+			if (buffer.getLong(offset + HASH_OFFSET) == hash) {
+				return new Owner(pid, locked);
+			}
+		}
+
+		return new Owner(-1, -1);
+	}
+
+	/**
+	 * Check whether a resource is locked by any process.
+	 *
+	 * @param name name of the resource
+	 * @return true if the resource is locked
+	 * @throws Unique4jException throws Unique4jException if the lock table cannot be locked
+	 */
+	public boolean isLocked(String name) throws Unique4jException {
+		return getOwner(name) != null;
+	}
+
+	// get the position of the region lock of a resource
+	private static long position(long hash) {
+		return LOCK_POSITION + (hash >>> 2);
+	}
+
+	// get the offset of the stripe of a resource
+	private int offset(long hash) {
+		return HEADER_SIZE + (int) ((hash & Long.MAX_VALUE) % stripes) * STRIPE_SIZE;
+	}
+
+}
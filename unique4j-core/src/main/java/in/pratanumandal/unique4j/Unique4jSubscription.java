@@ -0,0 +1,182 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Subscription to events broadcast by a running first instance.<br><br>
+ * 
+ * The subscription keeps a connection to the first instance open and receives every event passed to
+ * <code>Unique4j.broadcast()</code> after it has been opened. The first instance closes all subscriptions when it releases its lock,
+ * so a hot standby can subscribe and wait for the end of the subscription before calling <code>awaitLock()</code>.<br><br>
+ * 
+ * Sample usage:
+ * <pre>
+ *	// unique application ID
+ *	String APP_ID = "in.pratanumandal.unique4j-mlsdvo-20191511-#j.6";
+ *	
+ *	// subscribe to the first instance
+ *	Unique4jSubscription subscription = Unique4jSubscription.open(APP_ID);
+ *	
+ *	if (subscription != null) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;String event;
+ *	&nbsp;&nbsp;&nbsp;&nbsp;while ((event = subscription.receive()) != null) {
+ *	&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;&nbsp;System.out.println(event);
+ *	&nbsp;&nbsp;&nbsp;&nbsp;}
+ *	}
+ * </pre>
+ * 
+ * @author Pratanu Mandal
+ * @since 1.6
+ */
+public final class Unique4jSubscription implements Closeable {
+	
+	// connection to the first instance
+	private final SocketChannel socket;
+	
+	// buffer for frame headers
+	private final ByteBuffer header = ByteBuffer.allocate(Protocol.INT_BYTES);
+	
+	// maximum size of a single event in bytes
+	private volatile int maxEventSize = Unique4j.DEFAULT_MAX_MESSAGE_SIZE;
+	
+	private Unique4jSubscription(SocketChannel socket) {
+		this.socket = socket;
+	}
+	
+	/**
+	 * Subscribe to events broadcast by the first instance.
+	 * The first instance is resolved through lock files in the default lock directory.
+	 * 
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the subscription, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static Unique4jSubscription open(String APP_ID) throws Unique4jException {
+		return open(new FileLockStrategy(), APP_ID);
+	}
+	
+	/**
+	 * Subscribe to events broadcast by a first instance elected by a lock strategy.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the subscription, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static Unique4jSubscription open(LockStrategy lockStrategy, String APP_ID) throws Unique4jException {
+		return open(lockStrategy, new LoopbackTransport(), APP_ID);
+	}
+	
+	/**
+	 * Subscribe to events broadcast by a first instance elected by a lock strategy and reached through a transport.
+	 * 
+	 * @param lockStrategy lock strategy of the first instance
+	 * @param transport transport of the first instance
+	 * @param APP_ID Unique string representing the application ID
+	 * @return the subscription, or null if no first instance is running
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails
+	 */
+	public static Unique4jSubscription open(LockStrategy lockStrategy, Transport transport, String APP_ID) throws Unique4jException {
+		byte[] appIdFrame = MessageCodec.encodeFrame(APP_ID);
+		
+		SocketChannel socket = Unique4jConnection.open(lockStrategy, transport, APP_ID, Protocol.controlFrame(Protocol.SUBSCRIBE, appIdFrame), appIdFrame);
+		return (socket == null) ? null : new Unique4jSubscription(socket);
+	}
+	
+	/**
+	 * Set the maximum size of a single event in bytes accepted by this subscription.<br>
+	 * Larger events end the subscription before any memory is allocated for them. Defaults to <code>Unique4j.DEFAULT_MAX_MESSAGE_SIZE</code>.
+	 * 
+	 * @param maxEventSize maximum size of a single event in bytes
+	 */
+	public void setMaxEventSize(int maxEventSize) {
+		if (maxEventSize < 0) {
+			throw new IllegalArgumentException("Maximum event size must not be negative");
+		}
+		this.maxEventSize = maxEventSize;
+	}
+	
+	/**
+	 * Wait for the next event.
+	 * 
+	 * @return the event, or null if the subscription has ended
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails or it sends an invalid event
+	 */
+	public String receive() throws Unique4jException {
+		byte[] event = receiveBytes();
+		return (event == null) ? null : new String(event, MessageCodec.CHARSET);
+	}
+	
+	/**
+	 * Wait for the next event as raw bytes.
+	 * 
+	 * @return the event bytes, or null if the subscription has ended
+	 * @throws Unique4jException throws Unique4jException if the connection to the first instance fails or it sends an invalid event
+	 */
+	public synchronized byte[] receiveBytes() throws Unique4jException {
+		try {
+			// read event length
+			header.clear();
+			try {
+				Protocol.readFully(socket, header);
+			} catch (EOFException e) {
+				// first instance ended the subscription
+				return null;
+			}
+			
+			// events are never null, and the length is checked before allocating
+			int length = header.getInt(0);
+			if (length < 0 || length > maxEventSize) {
+				close();
+				throw new Unique4jException("Invalid event length: " + length);
+			}
+			
+			// read event bytes
+			ByteBuffer event = ByteBuffer.allocate(length);
+			Protocol.readFully(socket, event);
+			return event.array();
+		} catch (IOException e) {
+			if (!socket.isOpen()) {
+				// subscription closed locally
+				return null;
+			}
+			throw new Unique4jException(e);
+		}
+	}
+	
+	/**
+	 * End the subscription.
+	 */
+	@Override
+	public void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// ignore
+		}
+	}
+	
+}
@@ -0,0 +1,147 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+/**
+ * Instance of Unique4j running in a separate process for tests.<br>
+ * It holds the lock until its standard input is closed and then exits without releasing the lock.<br>
+ * Alternatively it probes the locks held by the parent process and prints the result.
+ */
+public class Unique4jProcess {
+	
+	// probe whether the election lock of a name is free
+	private static final String PROBE_LOCK = "--probe-lock";
+	
+	// probe whether an application has readers
+	private static final String PROBE_READERS = "--probe-readers";
+	
+	public static void main(String[] args) throws Unique4jException, IOException {
+		if (PROBE_LOCK.equals(args[0])) {
+			// print whether this process could become the first instance
+			LockStrategy.Lock lock = new FileLockStrategy().tryLock(args[1]);
+			System.out.println(lock != null);
+			if (lock != null) {
+				lock.release(false);
+			}
+			return;
+		}
+		
+		Unique4j unique = new Unique4j(args[args.length - 1], false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String message) {
+				// do nothing
+			}
+		};
+		
+		if (PROBE_READERS.equals(args[0])) {
+			// print whether readers hold the readers file
+			System.out.println(unique.hasReaders());
+			return;
+		}
+		
+		// try to obtain lock
+		System.out.println(unique.acquireLock());
+		System.out.flush();
+		
+		// hold the lock until standard input is closed
+		while (System.in.read() != -1);
+		
+		// exit like a crashed instance
+		System.exit(0);
+	}
+	
+	/**
+	 * Start an instance in a separate process.
+	 * 
+	 * @param appId unique string representing the application
+	 * @return the started process
+	 * @throws IOException if the process cannot be started
+	 */
+	public static Process start(String appId) throws IOException {
+		return start(new String[] { appId });
+	}
+	
+	/**
+	 * Check from a separate process whether the election lock of a name is free.
+	 * 
+	 * @param name name of the lock
+	 * @return true if the separate process could obtain the lock
+	 * @throws IOException if the process cannot be run
+	 * @throws InterruptedException if interrupted while waiting for the process
+	 */
+	public static boolean probeLock(String name) throws IOException, InterruptedException {
+		return Boolean.parseBoolean(run(PROBE_LOCK, name));
+	}
+	
+	/**
+	 * Check from a separate process whether an application has readers.
+	 * 
+	 * @param appId unique string representing the application
+	 * @return true if the separate process detects readers
+	 * @throws IOException if the process cannot be run
+	 * @throws InterruptedException if interrupted while waiting for the process
+	 */
+	public static boolean probeReaders(String appId) throws IOException, InterruptedException {
+		return Boolean.parseBoolean(run(PROBE_READERS, appId));
+	}
+	
+	// run a probe in a separate process and get the first line of its output
+	private static String run(String... args) throws IOException, InterruptedException {
+		Process process = start(args);
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+			String line = reader.readLine();
+			process.waitFor();
+			return line;
+		} finally {
+			process.destroy();
+		}
+	}
+	
+	// start this class in a separate process
+	private static Process start(String[] args) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		List<String> command = new ArrayList<String>();
+		command.add(java);
+		command.add("-cp");
+		command.add(System.getProperty("java.class.path"));
+		command.add(Unique4jProcess.class.getName());
+		command.addAll(Arrays.asList(args));
+		
+		ProcessBuilder builder = new ProcessBuilder(command);
+		builder.redirectErrorStream(true);
+		return builder.start();
+	}
+	
+}
@@ -0,0 +1,3306 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+public class Unique4jTest {
+	
+	private static final String TEMP_DIR = System.getProperty("java.io.tmpdir");
+	
+	private static final String APP_ID = "in.pratanumandal.unique4j-mlsdvo-20191511-#j.6";
+	
+	@Test
+	public void testUnique4jBasic() throws Unique4jException {
+		
+		Unique4j unique = new Unique4j(APP_ID) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+			
+			@Override
+			protected void handleException(Exception exception) {
+				// do nothing
+			}
+			
+			@Override
+			protected void beforeExit() {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique.acquireLock();
+		
+		// try to free the lock before exiting program
+		unique.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4j() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(message, received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jEmpty() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = new String();
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(message, received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jNull1() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<Object> received = new ArrayList<Object>();
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertNull(received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jNull2() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<Object> received = new ArrayList<Object>();
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null as a string
+				return "null";
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertNotNull(received.get(0));
+		Assert.assertEquals("null", received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jNewline1() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "hello\nworld";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(message, received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jNewline2() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "hello\r\nworld";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(message, received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jBytes() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<byte[]> received = new ArrayList<byte[]>();
+		
+		// failures on the server thread, asserted on the main thread
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		
+		final byte[] message = new byte[] { 0, -1, 127, -128, 10, 13, 0, 42 };
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// never invoked for raw bytes
+				failure.compareAndSet(null, "String message received for raw bytes");
+				
+				// wake up the main thread to report the failure
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+			
+			@Override
+			protected void receiveMessage(ByteBuffer arg0) {
+				// user code must not be able to modify the frame
+				if (!arg0.isReadOnly()) {
+					failure.compareAndSet(null, "Frame is writable by user code");
+				}
+				
+				// copy bytes as buffer is only valid during this call
+				byte[] bytes = new byte[arg0.remaining()];
+				arg0.get(bytes);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					// to assert on main thread
+					received.add(bytes);
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// never invoked for raw bytes
+				Assert.fail();
+				return null;
+			}
+			
+			@Override
+			protected ByteBuffer sendMessageBytes() {
+				// send raw bytes
+				return ByteBuffer.wrap(message);
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		synchronized (lock) {
+			while (received.isEmpty() && failure.get() == null) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+		// assert if the first instance has received the message as expected
+		Assert.assertNull(failure.get(), failure.get());
+		
+		// assert if message is sent correctly
+		synchronized (lock) {
+			Assert.assertArrayEquals(message, received.get(0));
+		}
+		
+	}
+	
+	@Test
+	public void testMaxMessageSize() throws Unique4jException {
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+			}
+		};
+		
+		// limit size of a single message
+		unique1.setMaxMessageSize(16);
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		try {
+			unique2.acquireLock();
+			Assert.fail("Message must be rejected");
+		} catch (Unique4jException e) {
+			// assert if message is rejected with the correct status
+			Assert.assertTrue(e.getMessage().contains(DeliveryStatus.REJECTED_TOO_LARGE.name()));
+		} finally {
+			// try to free the lock before exiting program
+			unique1.releaseLock();
+		}
+		
+		// assert that rejected message is never delivered
+		Assert.assertTrue(received.isEmpty());
+		
+	}
+	
+	@Test
+	public void testMemoryBudget() throws Unique4jException {
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+			}
+		};
+		
+		// limit message bytes in flight
+		unique1.setMemoryBudget(16);
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		try {
+			unique2.acquireLock();
+			Assert.fail("Message must be rejected");
+		} catch (Unique4jException e) {
+			// assert if message is rejected with the correct status
+			Assert.assertTrue(e.getMessage().contains(DeliveryStatus.REJECTED_BUSY.name()));
+		} finally {
+			// try to free the lock before exiting program
+			unique1.releaseLock();
+		}
+		
+		// assert that rejected message is never delivered
+		Assert.assertTrue(received.isEmpty());
+		
+	}
+	
+	@Test
+	public void testDurableReplay() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		// remove journal left behind by previous runs
+		File journal = new File(TEMP_DIR + File.separator + APP_ID + ".journal");
+		FileUtils.deleteQuietly(journal);
+		
+		// first instance which fails while processing the message
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// notify that message has been received
+				synchronized (lock) {
+					received.add(arg0);
+					lock.notify();
+				}
+				
+				// simulate crash before message is processed
+				throw new IllegalStateException("Simulated crash");
+			}
+		};
+		
+		// journal messages
+		unique1.setDurable(true);
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		synchronized (lock) {
+			while (received.isEmpty()) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// try to free the lock leaving the message unprocessed
+		unique1.releaseLock();
+		
+		// next first instance
+		Unique4j unique3 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// notify that message has been replayed
+				synchronized (lock) {
+					received.add(arg0);
+					lock.notify();
+				}
+			}
+		};
+		
+		// journal messages
+		unique3.setDurable(true);
+		
+		// try to obtain lock
+		unique3.acquireLock();
+		
+		// wait until message is replayed
+		synchronized (lock) {
+			while (received.size() < 2) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is replayed correctly
+		Assert.assertEquals(message, received.get(1));
+		
+		// try to free the lock before exiting program
+		unique3.releaseLock();
+		
+		// remove journal for subsequent tests
+		FileUtils.deleteQuietly(journal);
+		
+	}
+	
+	@Test
+	public void testJournalCompaction() throws IOException {
+		
+		File file = new File(TEMP_DIR + File.separator + APP_ID + "-compaction.journal");
+		File copy = new File(file.getPath() + ".1");
+		FileUtils.deleteQuietly(file);
+		FileUtils.deleteQuietly(copy);
+		
+		ByteBuffer payload = ByteBuffer.wrap(new byte[1000]);
+		
+		MessageJournal journal = MessageJournal.open(file, 4096);
+		long stuck;
+		try {
+			// leave the first entry pending while many later entries are processed
+			stuck = journal.append(ByteBuffer.wrap("stuck".getBytes("UTF-8")));
+			for (int i = 0; i < 1000; i++) {
+				journal.acknowledge(journal.append(payload));
+			}
+			journal.commit();
+			
+			// assert if processed entries are reclaimed instead of growing the journal
+			Assert.assertTrue(file.length() + copy.length() < 64 * 1024);
+		} finally {
+			journal.close();
+		}
+		
+		// assert if the pending entry survives compaction
+		journal = MessageJournal.open(file, 4096);
+		try {
+			List<Long> ids = new ArrayList<Long>();
+			List<ByteBuffer> payloads = new ArrayList<ByteBuffer>();
+			journal.pending(ids, payloads);
+			
+			Assert.assertEquals(Collections.singletonList(stuck), ids);
+			Assert.assertEquals("stuck", Charset.forName("UTF-8").decode(payloads.get(0)).toString());
+		} finally {
+			journal.close();
+			
+			FileUtils.deleteQuietly(file);
+			FileUtils.deleteQuietly(copy);
+		}
+		
+	}
+	
+	@Test
+	public void testJournalChecksum() throws IOException {
+		
+		File file = new File(TEMP_DIR + File.separator + APP_ID + "-checksum.journal");
+		File copy = new File(file.getPath() + ".1");
+		FileUtils.deleteQuietly(file);
+		FileUtils.deleteQuietly(copy);
+		
+		String[] messages = { "first", "second", "third" };
+		
+		MessageJournal journal = MessageJournal.open(file, 4096);
+		long first;
+		try {
+			first = journal.append(ByteBuffer.wrap(messages[0].getBytes("UTF-8")));
+			for (int i = 1; i < messages.length; i++) {
+				journal.append(ByteBuffer.wrap(messages[i].getBytes("UTF-8")));
+			}
+			journal.commit();
+		} finally {
+			journal.close();
+		}
+		
+		// tear the payload of the second entry like a crash before its page has been written
+		byte[] content = FileUtils.readFileToByteArray(file);
+		String text = new String(content, "ISO-8859-1");
+		int offset = text.indexOf("second");
+		Assert.assertTrue(offset > text.indexOf("first"));
+		content[offset] = 0;
+		FileUtils.writeByteArrayToFile(file, content);
+		
+		// assert if replay stops at the torn entry
+		journal = MessageJournal.open(file, 4096);
+		try {
+			List<Long> ids = new ArrayList<Long>();
+			List<ByteBuffer> payloads = new ArrayList<ByteBuffer>();
+			journal.pending(ids, payloads);
+			
+			Assert.assertEquals(Collections.singletonList(first), ids);
+			Assert.assertEquals("first", Charset.forName("UTF-8").decode(payloads.get(0)).toString());
+			
+			// assert if new entries replace the discarded ones
+			long next = journal.append(ByteBuffer.wrap("next".getBytes("UTF-8")));
+			Assert.assertTrue(next > first);
+			journal.commit();
+		} finally {
+			journal.close();
+		}
+		
+		// assert if the journal is intact again
+		journal = MessageJournal.open(file, 4096);
+		try {
+			List<Long> ids = new ArrayList<Long>();
+			List<ByteBuffer> payloads = new ArrayList<ByteBuffer>();
+			journal.pending(ids, payloads);
+			
+			Assert.assertEquals(2, ids.size());
+			Assert.assertEquals("next", Charset.forName("UTF-8").decode(payloads.get(1)).toString());
+		} finally {
+			journal.close();
+			
+			FileUtils.deleteQuietly(file);
+			FileUtils.deleteQuietly(copy);
+		}
+		
+	}
+	
+	@Test
+	public void testDeliveryAfterProcessing() throws Unique4jException {
+		
+		final List<String> processed = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+			
+			@Override
+			protected void receiveMessage(final ByteBuffer arg0, final Acknowledgement acknowledgement) {
+				// complete processing on another thread
+				new Thread() {
+					@Override
+					public void run() {
+						byte[] bytes = new byte[arg0.remaining()];
+						arg0.get(bytes);
+						String received = new String(bytes, Charset.forName("UTF-8"));
+						
+						if (received.equals(message)) {
+							synchronized (processed) {
+								processed.add(received);
+							}
+							acknowledgement.complete();
+						}
+						else {
+							acknowledgement.fail();
+						}
+					}
+				}.start();
+			}
+		};
+		
+		// acknowledge messages once processed
+		unique1.setDeliveryMode(DeliveryMode.AFTER_PROCESSING);
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// assert if message has been processed before the subsequent instance returns
+		Assert.assertEquals(DeliveryStatus.DELIVERED, unique2.getDeliveryStatus());
+		synchronized (processed) {
+			Assert.assertEquals(message, processed.get(0));
+		}
+		
+		Unique4j unique3 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send unexpected message
+				return "unexpected";
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		try {
+			unique3.acquireLock();
+			Assert.fail("Failed message must be reported");
+		} catch (Unique4jException e) {
+			// assert if failure is reported to the subsequent instance
+			Assert.assertEquals(DeliveryStatus.FAILED, unique3.getDeliveryStatus());
+		} finally {
+			// try to free the lock before exiting program
+			unique1.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testAwaitLock() throws Unique4jException {
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		final Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique1.acquireLock());
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				synchronized (received) {
+					received.add(arg0);
+					received.notifyAll();
+				}
+			}
+		};
+		
+		try {
+			// assert if standby times out while the first instance is running
+			Assert.assertFalse(unique2.awaitLock(100, TimeUnit.MILLISECONDS));
+			
+			// release the first instance while the standby is waiting
+			new Thread() {
+				@Override
+				public void run() {
+					try {
+						Thread.sleep(200);
+						unique1.releaseLock();
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+				}
+			}.start();
+			
+			// assert if standby takes over
+			Assert.assertTrue(unique2.awaitLock(10, TimeUnit.SECONDS));
+			
+			Unique4j unique3 = new Unique4j(APP_ID, false) {
+				@Override
+				protected String sendMessage() {
+					// send message
+					return message;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					// do nothing
+				}
+			};
+			
+			// assert if subsequent instance reaches the new first instance
+			Assert.assertFalse(unique3.acquireLock());
+			
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals(message, received.get(0));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			unique1.releaseLock();
+			unique2.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testLockSurvivesClients() throws Unique4jException, IOException, InterruptedException {
+		
+		final String appId = APP_ID + "-clients";
+		
+		Unique4j unique = new Unique4j(appId, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		try {
+			// open and close the lock file in this JVM in every possible way
+			Assert.assertNotNull(Unique4jClient.ping(appId));
+			Assert.assertEquals(DeliveryStatus.ACCEPTED, Unique4jClient.send(appId, "message"));
+			Assert.assertTrue(Unique4jClient.isRunning(appId));
+			new Unique4jConnection(appId).close();
+			
+			LockStrategy lockStrategy = new FileLockStrategy();
+			Assert.assertNotNull(lockStrategy.resolve(appId));
+			Assert.assertNull(lockStrategy.tryLock(appId));
+			Assert.assertNull(lockStrategy.lock(appId, TimeUnit.MILLISECONDS.toNanos(50)));
+			
+			// assert if another process still cannot become the first instance
+			Assert.assertFalse(Unique4jProcess.probeLock(appId));
+		} finally {
+			// try to free the lock before exiting program
+			unique.releaseLock();
+		}
+		
+		// assert if another process can become the first instance once the lock has been released
+		Assert.assertTrue(Unique4jProcess.probeLock(appId));
+		
+	}
+	
+	@Test
+	public void testClientTransport() throws Unique4jException, IOException {
+		
+		final String appId = APP_ID + "-transport";
+		
+		final AtomicInteger connections = new AtomicInteger();
+		
+		// count the connections of the clients
+		Transport transport = new LoopbackTransport() {
+			@Override
+			public SocketChannel connect(int port) throws IOException {
+				connections.incrementAndGet();
+				return super.connect(port);
+			}
+		};
+		
+		Unique4j unique = new Unique4j(appId, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		unique.setTransport(transport);
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		try {
+			LockStrategy lockStrategy = unique.getLockStrategy();
+			
+			// assert if every client connects through the given transport
+			Assert.assertEquals(DeliveryStatus.ACCEPTED, Unique4jClient.send(lockStrategy, unique.getTransport(), appId, "message"));
+			Assert.assertNotNull(Unique4jClient.ping(lockStrategy, transport, appId));
+			
+			Unique4jConnection connection = new Unique4jConnection(lockStrategy, transport, appId);
+			try {
+				Assert.assertEquals(DeliveryStatus.ACCEPTED, connection.send("message"));
+			} finally {
+				connection.close();
+			}
+			
+			Unique4jSubscription subscription = Unique4jSubscription.open(lockStrategy, transport, appId);
+			Assert.assertNotNull(subscription);
+			subscription.close();
+			
+			Assert.assertEquals(4, connections.get());
+		} finally {
+			// try to free the lock before exiting program
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testAwaitLockProcess() throws Unique4jException, IOException {
+		
+		final String appId = APP_ID + "-process";
+		
+		// start first instance in another process
+		Process process = Unique4jProcess.start(appId);
+		
+		Unique4j unique = new Unique4j(appId, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		try {
+			// wait for the other process to obtain the lock
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+			Assert.assertEquals("true", reader.readLine());
+			
+			// assert if standby times out while the other process is running
+			Assert.assertFalse(unique.awaitLock(200, TimeUnit.MILLISECONDS));
+			
+			// let the other process exit without releasing its lock
+			process.getOutputStream().close();
+			
+			// assert if standby takes over from the dead process
+			Assert.assertTrue(unique.awaitLock(30, TimeUnit.SECONDS));
+		} finally {
+			// try to free the lock before exiting program
+			process.destroy();
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testTakeOverLock() throws Unique4jException {
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final List<Boolean> handedOver = new ArrayList<Boolean>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+			
+			@Override
+			protected void afterHandover() {
+				synchronized (handedOver) {
+					handedOver.add(true);
+					handedOver.notifyAll();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique1.acquireLock());
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				synchronized (received) {
+					received.add(arg0);
+					received.notifyAll();
+				}
+			}
+		};
+		
+		try {
+			// assert if successor takes over from the first instance
+			Assert.assertTrue(unique2.takeOverLock(10, TimeUnit.SECONDS));
+			
+			// assert if the previous first instance has handed over
+			synchronized (handedOver) {
+				while (handedOver.isEmpty()) {
+					handedOver.wait();
+				}
+				Assert.assertEquals(1, handedOver.size());
+			}
+			Assert.assertFalse(unique1.releaseLock());
+			
+			Unique4j unique3 = new Unique4j(APP_ID, false) {
+				@Override
+				protected String sendMessage() {
+					// send message
+					return message;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					// do nothing
+				}
+			};
+			
+			// assert if subsequent instance reaches the successor
+			Assert.assertFalse(unique3.acquireLock());
+			
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals(message, received.get(0));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			unique1.releaseLock();
+			unique2.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testTakeOverLockUnauthorized() throws Unique4jException, IOException {
+		
+		final List<Boolean> handedOver = new ArrayList<Boolean>();
+		
+		Unique4j unique = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+			
+			@Override
+			protected void afterHandover() {
+				synchronized (handedOver) {
+					handedOver.add(true);
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		try {
+			String endpoint = unique.getLockStrategy().resolve(APP_ID);
+			int port = Protocol.parsePort(endpoint);
+			
+			// assert if the first instance publishes a handover token
+			Assert.assertTrue(Protocol.parseToken(endpoint) != 0);
+			
+			// ask for a handover without knowing the token
+			byte[] appIdFrame = MessageCodec.encodeFrame(APP_ID);
+			SocketChannel socket = SocketChannel.open(Protocol.address(port));
+			try {
+				byte[] control = Protocol.controlFrame(Protocol.HANDOVER, appIdFrame);
+				ByteBuffer request = ByteBuffer.allocate(control.length + Protocol.INT_BYTES + 2 * Protocol.LONG_BYTES);
+				request.put(control).putInt(port + 1).putLong(1000).putLong(Protocol.parseToken(endpoint) + 1).flip();
+				Protocol.writeFully(socket, request);
+				
+				// assert if the handover is refused
+				Assert.assertTrue(Protocol.readAppId(socket, ByteBuffer.allocate(appIdFrame.length), appIdFrame));
+				Assert.assertEquals(DeliveryStatus.REJECTED_UNAUTHORIZED, Protocol.readResponseStatus(socket, ByteBuffer.allocate(Protocol.INT_BYTES)));
+			} finally {
+				socket.close();
+			}
+			
+			// assert if the first instance keeps its lock
+			Assert.assertEquals(endpoint, unique.getLockStrategy().resolve(APP_ID));
+			synchronized (handedOver) {
+				Assert.assertTrue(handedOver.isEmpty());
+			}
+		} finally {
+			// try to free the lock before exiting program
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testTakeOverLockJournal() throws Unique4jException {
+		
+		final File journal = new File(TEMP_DIR + File.separator + APP_ID + ".journal");
+		FileUtils.deleteQuietly(journal);
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+			
+			@Override
+			protected void receiveMessage(ByteBuffer arg0, Acknowledgement acknowledgement) {
+				// never finish processing
+			}
+			
+			@Override
+			protected void afterHandover() {
+				// do nothing
+			}
+		};
+		
+		// journal messages
+		unique1.setDurable(true);
+		
+		// try to obtain lock
+		Assert.assertTrue(unique1.acquireLock());
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertFalse(unique2.acquireLock());
+		
+		Unique4j unique3 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				synchronized (received) {
+					received.add(arg0);
+					received.notifyAll();
+				}
+			}
+		};
+		
+		// journal messages
+		unique3.setDurable(true);
+		
+		try {
+			// assert if successor takes over while a message is still in flight
+			Assert.assertTrue(unique3.takeOverLock(1, TimeUnit.SECONDS));
+			
+			// assert if the unfinished message is migrated to the successor
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals(message, received.get(0));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			unique1.releaseLock();
+			unique3.releaseLock();
+			
+			FileUtils.deleteQuietly(journal);
+		}
+		
+	}
+	
+	@Test
+	public void testReleaseLockTimeout() throws Unique4jException {
+		
+		final List<String> interrupted = new ArrayList<String>();
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				try {
+					// process message slowly
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					// do nothing
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique1.acquireLock());
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return "drain";
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertFalse(unique2.acquireLock());
+		
+		// assert if message in flight is drained
+		TerminationReport report = unique1.releaseLock(10, TimeUnit.SECONDS);
+		Assert.assertTrue(report.isReleased());
+		Assert.assertTrue(report.isTerminated());
+		Assert.assertEquals(1, report.getDrainedMessages());
+		
+		// assert if the lock has been released
+		Assert.assertFalse(unique1.releaseLock(10, TimeUnit.SECONDS).isReleased());
+		
+		Unique4j unique3 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				try {
+					// never finish processing
+					Thread.sleep(Long.MAX_VALUE);
+				} catch (InterruptedException e) {
+					synchronized (interrupted) {
+						interrupted.add(arg0);
+						interrupted.notifyAll();
+					}
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique3.acquireLock());
+		
+		Unique4j unique4 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return "stuck";
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertFalse(unique4.acquireLock());
+		
+		// assert if message in flight is cancelled at the deadline
+		report = unique3.releaseLock(200, TimeUnit.MILLISECONDS);
+		Assert.assertTrue(report.isReleased());
+		Assert.assertFalse(report.isTerminated());
+		Assert.assertEquals(1, report.getCancelledMessages());
+		Assert.assertEquals(1, report.getInterruptedThreads().size());
+		
+		// assert if the connection thread has been interrupted
+		synchronized (interrupted) {
+			while (interrupted.isEmpty()) {
+				try {
+					interrupted.wait();
+				} catch (InterruptedException e) {
+					throw new Unique4jException(e);
+				}
+			}
+			Assert.assertEquals("stuck", interrupted.get(0));
+		}
+		
+	}
+	
+	@Test
+	public void testUnique4jClient() throws Unique4jException {
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		// assert if client reports no first instance
+		Assert.assertNull(Unique4jClient.send(APP_ID, message));
+		
+		Unique4j unique = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				synchronized (received) {
+					received.add(arg0);
+					received.notifyAll();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		try {
+			// assert if messages are delivered
+			Assert.assertEquals(DeliveryStatus.ACCEPTED, Unique4jClient.send(APP_ID, message));
+			Assert.assertEquals(DeliveryStatus.ACCEPTED, Unique4jClient.sendBytes(APP_ID, message.getBytes(Charset.forName("UTF-8"))));
+			Assert.assertEquals(DeliveryStatus.ACCEPTED, Unique4jClient.send(APP_ID, null));
+			
+			synchronized (received) {
+				while (received.size() < 3) {
+					received.wait();
+				}
+				Assert.assertEquals(2, Collections.frequency(received, message));
+				Assert.assertTrue(received.contains(null));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testPing() throws Unique4jException {
+		
+		final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+		
+		// assert if nothing answers without a first instance
+		Assert.assertNull(Unique4jClient.ping(APP_ID));
+		
+		Unique4j unique = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				received.add(arg0);
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		try {
+			// assert if first instance answers repeated pings
+			for (int i = 0; i < 3; i++) {
+				PingResult result = Unique4jClient.ping(APP_ID);
+				Assert.assertNotNull(result);
+				Assert.assertEquals(unique.getPort(), result.getPort());
+				Assert.assertTrue(result.getReplyTime(TimeUnit.NANOSECONDS) >= 0);
+				Assert.assertEquals(result.getConnectTime(TimeUnit.NANOSECONDS) + result.getHandshakeTime(TimeUnit.NANOSECONDS)
+						+ result.getReplyTime(TimeUnit.NANOSECONDS), result.getTotalTime(TimeUnit.NANOSECONDS));
+			}
+			
+			// assert if pings never reach receiveMessage
+			Assert.assertTrue(received.isEmpty());
+		} finally {
+			// try to free the lock before exiting program
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testRegistry() throws Unique4jException {
+		
+		final String appId = APP_ID + "-registry";
+		
+		final List<String> received = new ArrayList<String>();
+		
+		Unique4j unique1 = new Unique4j(appId, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				synchronized (received) {
+					received.add(arg0);
+					received.notifyAll();
+				}
+			}
+		};
+		unique1.setRegistered(true);
+		
+		Unique4j unique2 = new Unique4j(appId, false) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return "registered";
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		unique2.setRegistered(true);
+		
+		// assert if nothing is registered yet
+		Assert.assertNull(Unique4jRegistry.resolve(appId));
+		
+		// try to obtain lock
+		Assert.assertTrue(unique1.acquireLock());
+		
+		try {
+			// assert if first instance is registered
+			Unique4jRegistry.Entry entry = Unique4jRegistry.resolve(appId);
+			Assert.assertNotNull(entry);
+			Assert.assertEquals(unique1.getPort(), entry.getPort());
+			Assert.assertEquals(Unique4jRegistry.hash(appId), entry.getHash());
+			Assert.assertTrue(entry.isAlive());
+			
+			boolean listed = false;
+			for (Unique4jRegistry.Entry e : Unique4jRegistry.entries()) {
+				listed |= (e.getHash() == entry.getHash());
+			}
+			Assert.assertTrue(listed);
+			
+			// assert if subsequent instance resolves the first instance through the registry
+			Assert.assertFalse(unique2.acquireLock());
+			
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals("registered", received.get(0));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			unique1.releaseLock();
+		}
+		
+		// assert if first instance is removed from the registry
+		Assert.assertNull(Unique4jRegistry.resolve(appId));
+		
+	}
+	
+	@Test
+	public void testHosted() throws Unique4jException, IOException {
+		
+		final String[] appIds = { APP_ID + "-hosted1", APP_ID + "-hosted2" };
+		
+		final List<String> received = new ArrayList<String>();
+		
+		Unique4j[] hosted = new Unique4j[appIds.length];
+		for (int i = 0; i < appIds.length; i++) {
+			final String appId = appIds[i];
+			hosted[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// send null
+					return null;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					synchronized (received) {
+						received.add(appId + ":" + arg0);
+						received.notifyAll();
+					}
+				}
+			};
+			hosted[i].setHosted(true);
+			
+			// try to obtain lock
+			Assert.assertTrue(hosted[i].acquireLock());
+		}
+		
+		try {
+			// assert if all hosted instances share one port
+			Assert.assertEquals(hosted[0].getPort(), hosted[1].getPort());
+			
+			// send through the second instance, the standalone client and a keep-alive connection
+			for (final String appId : appIds) {
+				Unique4j unique = new Unique4j(appId, false) {
+					@Override
+					protected String sendMessage() {
+						// send message
+						return "instance";
+					}
+					
+					@Override
+					protected void receiveMessage(String arg0) {
+						// do nothing
+					}
+				};
+				Assert.assertFalse(unique.acquireLock());
+				
+				Assert.assertEquals(DeliveryStatus.ACCEPTED, Unique4jClient.send(appId, "client"));
+				
+				Unique4jConnection connection = new Unique4jConnection(appId);
+				try {
+					Assert.assertEquals(DeliveryStatus.ACCEPTED, connection.send("connection"));
+				} finally {
+					connection.close();
+				}
+			}
+			
+			// assert if every message has been routed to its own first instance
+			synchronized (received) {
+				while (received.size() < 6) {
+					received.wait();
+				}
+				
+				for (String appId : appIds) {
+					Assert.assertTrue(received.contains(appId + ":instance"));
+					Assert.assertTrue(received.contains(appId + ":client"));
+					Assert.assertTrue(received.contains(appId + ":connection"));
+				}
+			}
+			
+			// assert if the host keeps serving the remaining instance
+			Assert.assertTrue(hosted[0].releaseLock());
+			Assert.assertNull(Unique4jClient.send(appIds[0], "released"));
+			Assert.assertEquals(DeliveryStatus.ACCEPTED, Unique4jClient.send(appIds[1], "remaining"));
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			for (Unique4j unique : hosted) {
+				unique.releaseLock();
+			}
+		}
+		
+	}
+	
+	@Test
+	public void testHostedStartFailure() throws Unique4jException, IOException {
+		
+		final String appId = APP_ID + "-hosted-failure";
+		
+		// lock strategy which elects the instance but fails to publish its endpoint
+		final LockStrategy files = new FileLockStrategy();
+		LockStrategy failing = new LockStrategy() {
+			@Override
+			public LockStrategy.Lock tryLock(String name) throws IOException {
+				final LockStrategy.Lock lock = files.tryLock(name);
+				return (lock == null) ? null : new LockStrategy.Lock() {
+					@Override
+					public void publish(String endpoint) throws IOException {
+						throw new IOException("Simulated failure");
+					}
+					
+					@Override
+					public void release(boolean withdraw) throws IOException {
+						lock.release(withdraw);
+					}
+				};
+			}
+			
+			@Override
+			public LockStrategy.Lock lock(String name, long timeoutNanos) throws IOException, InterruptedException {
+				return tryLock(name);
+			}
+			
+			@Override
+			public boolean isLocked(String name) throws IOException {
+				return files.isLocked(name);
+			}
+			
+			@Override
+			public String resolve(String name) throws IOException {
+				return files.resolve(name);
+			}
+		};
+		
+		Unique4j[] hosted = new Unique4j[2];
+		for (int i = 0; i < hosted.length; i++) {
+			hosted[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// send null
+					return null;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					// do nothing
+				}
+			};
+			hosted[i].setHosted(true);
+		}
+		hosted[0].setLockStrategy(failing);
+		
+		try {
+			// assert if a failed start gives up the election
+			try {
+				hosted[0].acquireLock();
+				Assert.fail("Start should have failed");
+			} catch (Unique4jException e) {
+				// expected
+			}
+			Assert.assertTrue(hosted[1].acquireLock());
+			int port = hosted[1].getPort();
+			
+			// assert if the host stops once the last first instance has released it
+			Assert.assertTrue(hosted[1].releaseLock());
+			
+			// the listening socket goes away once the accept thread of the host has woken up
+			boolean stopped = false;
+			for (int i = 0; i < 100 && !stopped; i++) {
+				try {
+					SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)).close();
+					Thread.sleep(10);
+				} catch (IOException e) {
+					stopped = true;
+				}
+			}
+			Assert.assertTrue(stopped);
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			for (Unique4j unique : hosted) {
+				unique.releaseLock();
+			}
+		}
+		
+	}
+	
+	@Test
+	public void testKeyedLock() throws Unique4jException {
+		
+		final String appId = APP_ID + "-keyed";
+		
+		final List<String> received = new ArrayList<String>();
+		
+		Unique4j[] firsts = new Unique4j[2];
+		for (int i = 0; i < firsts.length; i++) {
+			final String key = "/workspace/" + i;
+			firsts[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// send null
+					return null;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					synchronized (received) {
+						received.add(key + ":" + arg0);
+						received.notifyAll();
+					}
+				}
+			};
+			
+			// assert if every key gets its own first instance
+			Assert.assertTrue(firsts[i].acquireLock(key));
+		}
+		
+		try {
+			Assert.assertFalse(firsts[0].getPort() == firsts[1].getPort());
+			
+			// assert if a subsequent instance is routed to the first instance of its key
+			Unique4j unique = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// send message
+					return "second";
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					// do nothing
+				}
+			};
+			Assert.assertFalse(unique.acquireLock("/workspace/1"));
+			
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals("/workspace/1:second", received.get(0));
+			}
+			
+			// assert if the key can be acquired again once released
+			Assert.assertTrue(firsts[1].releaseLock());
+			Assert.assertTrue(unique.acquireLock("/workspace/1"));
+			Assert.assertTrue(unique.releaseLock());
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			for (Unique4j first : firsts) {
+				first.releaseLock();
+			}
+		}
+		
+	}
+	
+	@Test
+	public void testPool() throws Unique4jException {
+		
+		final String appId = APP_ID + "-pool";
+		
+		final List<String> received = new ArrayList<String>();
+		final Object busy = new Object();
+		final boolean[] released = new boolean[1];
+		
+		Unique4j[] firsts = new Unique4j[2];
+		for (int i = 0; i < firsts.length; i++) {
+			final int slot = i;
+			firsts[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// send null
+					return null;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					synchronized (received) {
+						received.add(slot + ":" + arg0);
+						received.notifyAll();
+					}
+					
+					// keep the first message in flight
+					if ("busy".equals(arg0)) {
+						synchronized (busy) {
+							while (!released[0]) {
+								try {
+									busy.wait();
+								} catch (InterruptedException e) {
+									return;
+								}
+							}
+						}
+					}
+				}
+			};
+			firsts[i].setPoolSize(2);
+			
+			// assert if every slot gets its own first instance
+			Assert.assertTrue(firsts[i].acquireLock());
+		}
+		
+		try {
+			Assert.assertFalse(firsts[0].getPort() == firsts[1].getPort());
+			
+			// assert if subsequent instances are routed to the least loaded first instance
+			String[] messages = { "busy", "routed" };
+			for (final String message : messages) {
+				Unique4j unique = new Unique4j(appId, false) {
+					@Override
+					protected String sendMessage() {
+						// send message
+						return message;
+					}
+					
+					@Override
+					protected void receiveMessage(String arg0) {
+						// do nothing
+					}
+				};
+				unique.setPoolSize(2);
+				Assert.assertFalse(unique.acquireLock());
+			}
+			
+			synchronized (received) {
+				while (received.size() < 2) {
+					received.wait();
+				}
+				Assert.assertTrue(received.contains("0:busy"));
+				Assert.assertTrue(received.contains("1:routed"));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			synchronized (busy) {
+				released[0] = true;
+				busy.notifyAll();
+			}
+			
+			// try to free the lock before exiting program
+			for (Unique4j first : firsts) {
+				first.releaseLock();
+			}
+		}
+		
+	}
+	
+	@Test
+	public void testPoolProcess() throws Unique4jException, IOException {
+		
+		final String appId = APP_ID + "-pool-process";
+		
+		final List<String> received = new ArrayList<String>();
+		
+		Unique4j[] instances = new Unique4j[4];
+		for (int i = 0; i < instances.length; i++) {
+			final int instance = i;
+			instances[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// send message
+					return "instance " + instance;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					synchronized (received) {
+						received.add(arg0);
+						received.notifyAll();
+					}
+				}
+			};
+			instances[i].setPoolSize(3);
+		}
+		
+		try {
+			// assert if every slot is taken by its own instance of this JVM
+			for (int i = 0; i < 3; i++) {
+				Assert.assertTrue(instances[i].acquireLock());
+			}
+			Assert.assertFalse(instances[0].getPort() == instances[1].getPort());
+			Assert.assertFalse(instances[1].getPort() == instances[2].getPort());
+			Assert.assertFalse(instances[0].getPort() == instances[2].getPort());
+			
+			// assert if a subsequent instance of this JVM is routed to a first instance
+			Assert.assertFalse(instances[3].acquireLock());
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals("instance 3", received.get(0));
+			}
+			
+			// assert if another process sees every slot locked after the subsequent instance has probed them
+			for (int slot = 0; slot < 3; slot++) {
+				Assert.assertFalse(Unique4jProcess.probeLock(appId + "." + slot));
+			}
+			
+			// assert if another process sees the slot of a released instance as free
+			Assert.assertTrue(instances[1].releaseLock());
+			Assert.assertFalse(Unique4jProcess.probeLock(appId + ".0"));
+			Assert.assertTrue(Unique4jProcess.probeLock(appId + ".1"));
+			Assert.assertFalse(Unique4jProcess.probeLock(appId + ".2"));
+			
+			// assert if the free slot is taken again by an instance of this JVM
+			Assert.assertTrue(instances[3].acquireLock());
+			Assert.assertFalse(instances[3].getPort() == instances[0].getPort());
+			Assert.assertFalse(instances[3].getPort() == instances[2].getPort());
+			for (int slot = 0; slot < 3; slot++) {
+				Assert.assertFalse(Unique4jProcess.probeLock(appId + "." + slot));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			for (Unique4j instance : instances) {
+				instance.releaseLock();
+			}
+		}
+		
+		// assert if another process sees every slot free
+		try {
+			for (int slot = 0; slot < 3; slot++) {
+				Assert.assertTrue(Unique4jProcess.probeLock(appId + "." + slot));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		}
+		
+	}
+	
+	@Test
+	public void testResourceLocks() throws Unique4jException, InterruptedException {
+		
+		Unique4jResourceLocks locks = Unique4jResourceLocks.open(APP_ID + "-resources");
+		
+		// assert if a resource can be locked once
+		final Unique4jResourceLocks.ResourceLock first = locks.tryLock("/documents/first.txt");
+		Assert.assertNotNull(first);
+		Assert.assertNull(locks.tryLock("/documents/first.txt"));
+		
+		// assert if other resources are independent
+		Unique4jResourceLocks.ResourceLock second = locks.tryLock("/documents/second.txt");
+		Assert.assertNotNull(second);
+		
+		// assert if the owner can be found
+		Unique4jResourceLocks.Owner owner = locks.getOwner("/documents/first.txt");
+		Assert.assertNotNull(owner);
+		Assert.assertEquals(Protocol.pid(), owner.getPid());
+		Assert.assertNull(locks.getOwner("/documents/third.txt"));
+		
+		// assert if a timed wait elapses
+		Assert.assertNull(locks.lock("/documents/first.txt", 50, TimeUnit.MILLISECONDS));
+		
+		// assert if a timed wait obtains the lock once released
+		Thread releaser = new Thread() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(100);
+					first.release();
+				} catch (Exception e) {
+					// ignore
+				}
+			}
+		};
+		releaser.start();
+		
+		Unique4jResourceLocks.ResourceLock again = locks.lock("/documents/first.txt", 5, TimeUnit.SECONDS);
+		Assert.assertNotNull(again);
+		Assert.assertFalse(first.isValid());
+		releaser.join();
+		
+		// assert if released resources are unlocked
+		again.release();
+		second.release();
+		second.release();
+		Assert.assertFalse(locks.isLocked("/documents/first.txt"));
+		Assert.assertFalse(locks.isLocked("/documents/second.txt"));
+		
+	}
+	
+	@Test
+	public void testReadWriteLock() throws Unique4jException {
+		
+		final String appId = APP_ID + "-readwrite";
+		
+		Unique4j[] instances = new Unique4j[3];
+		for (int i = 0; i < instances.length; i++) {
+			instances[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// readers must not send messages
+					throw new IllegalStateException();
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					// do nothing
+				}
+			};
+		}
+		
+		Unique4j writer = instances[0];
+		Unique4jSubscription subscription = null;
+		
+		try {
+			// assert if the writer is elected exclusively
+			Assert.assertTrue(writer.acquireLock(LockMode.EXCLUSIVE));
+			Assert.assertFalse(writer.hasReaders());
+			
+			// assert if any number of readers run alongside the writer
+			Assert.assertTrue(instances[1].acquireLock(LockMode.SHARED));
+			Assert.assertTrue(instances[2].acquireLock(LockMode.SHARED));
+			Assert.assertTrue(writer.hasReaders());
+			
+			// assert if readers receive invalidations from the writer
+			subscription = Unique4jSubscription.open(appId);
+			Assert.assertNotNull(subscription);
+			Assert.assertEquals(1, writer.broadcast("invalidate"));
+			Assert.assertEquals("invalidate", subscription.receive());
+			
+			// assert if readers are gone once released
+			Assert.assertTrue(instances[1].releaseLock());
+			Assert.assertTrue(writer.hasReaders());
+			Assert.assertTrue(instances[2].releaseLock());
+			Assert.assertFalse(instances[2].releaseLock());
+			Assert.assertFalse(writer.hasReaders());
+		} finally {
+			// try to free the lock before exiting program
+			if (subscription != null) {
+				subscription.close();
+			}
+			for (Unique4j instance : instances) {
+				instance.releaseLock();
+			}
+		}
+		
+	}
+	
+	@Test
+	public void testReadersProcess() throws Unique4jException, IOException, InterruptedException {
+		
+		final String appId = APP_ID + "-readers";
+		
+		Unique4j[] instances = new Unique4j[3];
+		for (int i = 0; i < instances.length; i++) {
+			instances[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// readers must not send messages
+					throw new IllegalStateException();
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					// do nothing
+				}
+			};
+		}
+		
+		try {
+			// two readers and a probe in this JVM
+			Assert.assertTrue(instances[0].acquireLock(LockMode.SHARED));
+			Assert.assertTrue(instances[1].acquireLock(LockMode.SHARED));
+			Assert.assertTrue(instances[2].hasReaders());
+			
+			// assert if another process still sees the readers after the probe
+			Assert.assertTrue(Unique4jProcess.probeReaders(appId));
+			
+			// assert if the remaining reader is still seen once the other one has released
+			Assert.assertTrue(instances[0].releaseLock());
+			Assert.assertTrue(Unique4jProcess.probeReaders(appId));
+			
+			// assert if no readers are seen once all have released
+			Assert.assertTrue(instances[1].releaseLock());
+			Assert.assertFalse(Unique4jProcess.probeReaders(appId));
+		} finally {
+			// try to free the lock before exiting program
+			for (Unique4j instance : instances) {
+				instance.releaseLock();
+			}
+		}
+		
+	}
+	
+	@Test
+	public void testCluster() throws Unique4jException, IOException {
+		
+		final String appId = APP_ID + "-cluster";
+		
+		// directory shared by all nodes
+		File directory = new File(TEMP_DIR + File.separator + appId);
+		FileUtils.deleteDirectory(directory);
+		Assert.assertTrue(directory.mkdirs());
+		
+		final List<String> received = new ArrayList<String>();
+		
+		Unique4j[] nodes = new Unique4j[3];
+		for (int i = 0; i < nodes.length; i++) {
+			final int node = i;
+			nodes[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// send message
+					return "node " + node;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					synchronized (received) {
+						received.add(node + ":" + arg0);
+						received.notifyAll();
+					}
+				}
+			};
+			nodes[i].setCluster(directory, "127.0.0.1", 2, TimeUnit.SECONDS);
+		}
+		
+		try {
+			// assert if the first node becomes the leader
+			Assert.assertTrue(nodes[0].acquireLock());
+			Assert.assertEquals(1, nodes[0].getFencingToken());
+			
+			// assert if other nodes forward their message to the leader
+			Assert.assertFalse(nodes[1].acquireLock());
+			Assert.assertEquals(-1, nodes[1].getFencingToken());
+			
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals("0:node 1", received.get(0));
+			}
+			
+			// assert if the leader only listens on its advertised address
+			List<String> leased = FileUtils.readLines(new File(directory, appId + ".lease"), "UTF-8");
+			Assert.assertEquals("127.0.0.1", leased.get(2));
+			int port = Integer.parseInt(leased.get(3));
+			InetAddress local = InetAddress.getLocalHost();
+			if (!"127.0.0.1".equals(local.getHostAddress())) {
+				ServerSocketChannel server = ServerSocketChannel.open();
+				try {
+					server.socket().bind(new InetSocketAddress(local, port));
+				} finally {
+					server.close();
+				}
+			}
+			
+			// assert if the leader drops messages without the credentials of its lease
+			long[] secrets = { 0, Long.parseLong(leased.get(4)) + 1 };
+			for (long secret : secrets) {
+				SocketChannel socket = SocketChannel.open(new InetSocketAddress("127.0.0.1", port));
+				try {
+					byte[] appIdFrame = MessageCodec.encodeFrame(appId);
+					ByteBuffer frame = ByteBuffer.allocate(Protocol.INT_BYTES + 1 + appIdFrame.length + 2 * Protocol.LONG_BYTES + Protocol.INT_BYTES);
+					frame.putInt(Protocol.MAGIC).put(Protocol.CLUSTER).put(appIdFrame);
+					frame.putLong(Long.parseLong(leased.get(0))).putLong(secret).putInt(-1);
+					frame.flip();
+					Protocol.writeFully(socket, frame);
+					Assert.assertEquals(-1, socket.read(ByteBuffer.allocate(1)));
+				} catch (IOException e) {
+					// the connection may be reset as the leader closes it without reading the message
+				} finally {
+					socket.close();
+				}
+			}
+			Assert.assertEquals(1, received.size());
+			
+			// assert if the next leader gets a higher fencing token
+			Assert.assertTrue(nodes[0].releaseLock());
+			Assert.assertEquals(-1, nodes[0].getFencingToken());
+			Assert.assertTrue(nodes[2].acquireLock());
+			Assert.assertEquals(2, nodes[2].getFencingToken());
+			
+			// assert if a token claimed by a candidate which has given up is skipped
+			Assert.assertTrue(nodes[2].releaseLock());
+			Assert.assertTrue(new File(directory, appId + ".lease.claim-3").createNewFile());
+			Assert.assertTrue(nodes[0].acquireLock());
+			Assert.assertEquals(4, nodes[0].getFencingToken());
+			
+			// assert if the claims of earlier tokens have been removed
+			Assert.assertFalse(new File(directory, appId + ".lease.claim-3").exists());
+			Assert.assertTrue(new File(directory, appId + ".lease.claim-4").exists());
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			for (Unique4j node : nodes) {
+				node.releaseLock();
+			}
+			FileUtils.deleteDirectory(directory);
+		}
+		
+	}
+	
+	@Test
+	public void testLockStrategy() throws Unique4jException, IOException {
+		
+		final String appId = APP_ID + "-strategy";
+		
+		final List<String> received = new ArrayList<String>();
+		
+		// instances elected in memory
+		LockStrategy strategy = new InProcessLockStrategy();
+		Unique4j[] instances = new Unique4j[2];
+		for (int i = 0; i < instances.length; i++) {
+			final int instance = i;
+			instances[i] = new Unique4j(appId, false) {
+				@Override
+				protected String sendMessage() {
+					// send message
+					return "instance " + instance;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					synchronized (received) {
+						received.add(arg0);
+						received.notifyAll();
+					}
+				}
+			};
+			instances[i].setLockStrategy(strategy);
+		}
+		
+		// instance elected through a lock file in a custom lock directory
+		File directory = new File(TEMP_DIR + File.separator + appId);
+		FileUtils.deleteDirectory(directory);
+		Assert.assertTrue(directory.mkdirs());
+		
+		Unique4j unique = new Unique4j(appId, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		unique.setLockDirectory(directory);
+		
+		try {
+			// assert if instances sharing a strategy elect one first instance
+			Assert.assertTrue(instances[0].acquireLock());
+			Assert.assertFalse(instances[1].acquireLock());
+			
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals("instance 1", received.get(0));
+			}
+			
+			// assert if the in-process strategy creates no lock file
+			Assert.assertFalse(new File(TEMP_DIR + File.separator + appId + ".lock").exists());
+			
+			// assert if clients find the first instance through its lock strategy only
+			Assert.assertTrue(Unique4jClient.isRunning(instances[0].getLockStrategy(), appId));
+			Assert.assertFalse(Unique4jClient.isRunning(appId));
+			
+			// assert if the lock file is created in the lock directory
+			Assert.assertTrue(unique.acquireLock());
+			Assert.assertTrue(new File(directory, appId + ".lock").exists());
+			Assert.assertTrue(Unique4jClient.isRunning(new FileLockStrategy(directory), appId));
+			Assert.assertTrue(unique.releaseLock());
+			
+			// assert if the endpoint is withdrawn without deleting the lock file
+			Assert.assertEquals(0, new File(directory, appId + ".lock").length());
+			
+			// assert if the lock can be acquired again once released
+			Assert.assertTrue(instances[0].releaseLock());
+			Assert.assertTrue(instances[1].acquireLock());
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			for (Unique4j instance : instances) {
+				instance.releaseLock();
+			}
+			unique.releaseLock();
+			FileUtils.deleteDirectory(directory);
+		}
+		
+	}
+	
+	@Test
+	public void testIsRunning() throws Unique4jException, IOException, InterruptedException {
+		
+		final String appId = APP_ID + "-running";
+		
+		File lockFile = new File(TEMP_DIR + File.separator + appId + ".lock");
+		lockFile.delete();
+		
+		// assert if nothing is running and no lock file is created
+		Assert.assertFalse(Unique4jClient.isRunning(appId));
+		Assert.assertFalse(lockFile.exists());
+		
+		Unique4j unique = new Unique4j(appId, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// assert if first instance in this JVM is detected
+		Assert.assertTrue(unique.acquireLock());
+		try {
+			Assert.assertTrue(Unique4jClient.isRunning(appId));
+		} finally {
+			unique.releaseLock();
+		}
+		Assert.assertFalse(Unique4jClient.isRunning(appId));
+		
+		// start first instance in another process
+		Process process = Unique4jProcess.start(appId);
+		try {
+			// wait for the other process to obtain the lock
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+			Assert.assertEquals("true", reader.readLine());
+			
+			// assert if first instance in another process is detected without touching the lock file
+			long modified = lockFile.lastModified();
+			Assert.assertTrue(Unique4jClient.isRunning(appId));
+			Assert.assertEquals(modified, lockFile.lastModified());
+			
+			// let the other process exit without releasing its lock
+			process.getOutputStream().close();
+			process.waitFor();
+			
+			// assert if stale lock file is not reported as running
+			Assert.assertTrue(lockFile.exists());
+			Assert.assertFalse(Unique4jClient.isRunning(appId));
+		} finally {
+			process.destroy();
+			lockFile.delete();
+		}
+		
+	}
+	
+	@Test
+	public void testIsRunningStandby() throws Unique4jException, IOException, InterruptedException {
+		
+		final String appId = APP_ID + "-running-standby";
+		
+		final Unique4j standby = new Unique4j(appId, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// result of the standby, to assert on main thread
+		final AtomicReference<Object> elected = new AtomicReference<Object>();
+		
+		// start first instance in another process
+		Process process = Unique4jProcess.start(appId);
+		try {
+			// wait for the other process to obtain the lock
+			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+			Assert.assertEquals("true", reader.readLine());
+			
+			// block a standby in this JVM until the other process exits
+			Thread thread = new Thread() {
+				@Override
+				public void run() {
+					try {
+						elected.set(standby.awaitLock(20, TimeUnit.SECONDS));
+					} catch (Unique4jException e) {
+						elected.set(e);
+					}
+				}
+			};
+			thread.start();
+			Thread.sleep(100);
+			
+			// assert if frequent probes neither fail nor let the standby in
+			for (int i = 0; i < 1000; i++) {
+				Assert.assertTrue(Unique4jClient.isRunning(appId));
+			}
+			Assert.assertNull(elected.get());
+			Assert.assertTrue(thread.isAlive());
+			
+			// let the other process exit without releasing its lock
+			process.getOutputStream().close();
+			process.waitFor();
+			
+			// assert if the standby takes over and is detected
+			thread.join();
+			Assert.assertEquals(Boolean.TRUE, elected.get());
+			Assert.assertTrue(Unique4jClient.isRunning(appId));
+		} finally {
+			process.destroy();
+			standby.releaseLock();
+		}
+		
+		// assert if the released lock file is not reported as running
+		Assert.assertFalse(Unique4jClient.isRunning(appId));
+		
+	}
+	
+	@Test
+	public void testUnique4jConnection() throws Unique4jException {
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				synchronized (received) {
+					received.add(arg0);
+					received.notifyAll();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique1.acquireLock());
+		
+		Unique4jConnection connection = new Unique4jConnection(APP_ID);
+		
+		try {
+			// assert if messages are delivered over a single connection
+			Assert.assertEquals(DeliveryStatus.ACCEPTED, connection.send(message));
+			Assert.assertEquals(DeliveryStatus.ACCEPTED, connection.sendBytes(message.getBytes(Charset.forName("UTF-8"))));
+			
+			// assert if pipelined messages are delivered in order
+			List<String> messages = new ArrayList<String>();
+			messages.add("1");
+			messages.add(null);
+			messages.add("3");
+			List<DeliveryStatus> statuses = connection.sendAll(messages);
+			Assert.assertEquals(3, statuses.size());
+			for (DeliveryStatus status : statuses) {
+				Assert.assertEquals(DeliveryStatus.ACCEPTED, status);
+			}
+			
+			synchronized (received) {
+				while (received.size() < 5) {
+					received.wait();
+				}
+				Assert.assertEquals(message, received.get(0));
+				Assert.assertEquals(message, received.get(1));
+				Assert.assertEquals(messages, received.subList(2, 5));
+			}
+			
+			// replace the first instance
+			unique1.releaseLock();
+			
+			Unique4j unique2 = new Unique4j(APP_ID, false) {
+				@Override
+				protected String sendMessage() {
+					// send null
+					return null;
+				}
+				
+				@Override
+				protected void receiveMessage(String arg0) {
+					synchronized (received) {
+						received.add(arg0);
+						received.notifyAll();
+					}
+				}
+			};
+			
+			// try to obtain lock
+			Assert.assertTrue(unique2.acquireLock());
+			
+			// assert if connection re-resolves the new first instance
+			try {
+				Assert.assertEquals(DeliveryStatus.ACCEPTED, connection.send(message));
+				
+				synchronized (received) {
+					while (received.size() < 6) {
+						received.wait();
+					}
+					Assert.assertEquals(message, received.get(5));
+				}
+			} finally {
+				unique2.releaseLock();
+			}
+			
+			// assert if connection reports no first instance
+			Assert.assertNull(connection.send(message));
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			connection.close();
+			unique1.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testBroadcast() throws Unique4jException {
+		
+		Unique4j unique = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// assert if nobody can subscribe without a first instance
+		Assert.assertNull(Unique4jSubscription.open(APP_ID));
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		Unique4jSubscription subscription1 = Unique4jSubscription.open(APP_ID);
+		Unique4jSubscription subscription2 = Unique4jSubscription.open(APP_ID);
+		
+		try {
+			// assert if events reach every subscriber
+			Assert.assertEquals(2, unique.broadcast("config reloaded"));
+			Assert.assertEquals(2, unique.broadcastBytes(ByteBuffer.wrap("document saved".getBytes(Charset.forName("UTF-8")))));
+			
+			Assert.assertEquals("config reloaded", subscription1.receive());
+			Assert.assertEquals("document saved", subscription1.receive());
+			Assert.assertEquals("config reloaded", subscription2.receive());
+			Assert.assertEquals("document saved", subscription2.receive());
+			
+			// assert if subscriptions end when the lock is released
+			unique.releaseLock();
+			Assert.assertNull(subscription1.receive());
+			Assert.assertNull(subscription2.receive());
+		} finally {
+			// try to free the lock before exiting program
+			subscription1.close();
+			subscription2.close();
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testSubscriptionEventLength() throws Unique4jException, IOException, InterruptedException {
+		
+		final String appId = APP_ID + "-event-length";
+		
+		// fake first instance which announces an event larger than allowed
+		final ServerSocketChannel server = ServerSocketChannel.open();
+		server.socket().bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					SocketChannel socket = server.accept();
+					byte[] appIdFrame = MessageCodec.encodeFrame(appId);
+					ByteBuffer response = ByteBuffer.allocate(appIdFrame.length + 2 * Protocol.INT_BYTES);
+					response.put(appIdFrame).putInt(DeliveryStatus.ACCEPTED.getCode()).putInt(Integer.MAX_VALUE).flip();
+					Protocol.writeFully(socket, response);
+				} catch (IOException e) {
+					// the subscription fails to open
+				}
+			}
+		};
+		thread.start();
+		
+		LockStrategy lockStrategy = new InProcessLockStrategy();
+		LockStrategy.Lock lock = lockStrategy.tryLock(appId);
+		lock.publish(String.valueOf(server.socket().getLocalPort()));
+		
+		Unique4jSubscription subscription = Unique4jSubscription.open(lockStrategy, appId);
+		try {
+			// assert if the event is refused before allocating its length
+			subscription.setMaxEventSize(1024);
+			try {
+				subscription.receiveBytes();
+				Assert.fail("Oversized event should have been refused");
+			} catch (Unique4jException e) {
+				// expected
+			}
+			
+			// assert if the subscription has ended
+			Assert.assertNull(subscription.receiveBytes());
+		} finally {
+			subscription.close();
+			thread.join();
+			server.close();
+			lock.release(true);
+		}
+		
+	}
+	
+	@Test
+	public void testEmbedded() throws Unique4jException, IOException {
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique = new Unique4j(APP_ID, false) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				received.add(arg0);
+			}
+		};
+		
+		// let the test drive the server socket
+		unique.setEmbedded(true);
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		Selector selector = Selector.open();
+		try {
+			// assert if no threads have been started
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				Assert.assertFalse(thread.getName().startsWith("Unique4j-" + APP_ID));
+			}
+			
+			ServerSocketChannel server = unique.getServerChannel();
+			Assert.assertNotNull(server);
+			server.register(selector, SelectionKey.OP_ACCEPT);
+			
+			// send message from another thread
+			final List<DeliveryStatus> statuses = new ArrayList<DeliveryStatus>();
+			Thread client = new Thread() {
+				@Override
+				public void run() {
+					try {
+						DeliveryStatus status = Unique4jClient.send(APP_ID, message);
+						synchronized (statuses) {
+							statuses.add(status);
+						}
+					} catch (Unique4jException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			client.start();
+			
+			// drive the connection on this thread
+			long deadline = System.currentTimeMillis() + 10000;
+			while (received.isEmpty() && System.currentTimeMillis() < deadline) {
+				selector.select(100);
+				for (SelectionKey key : selector.selectedKeys()) {
+					if (key.isAcceptable()) {
+						SocketChannel channel = server.accept();
+						if (channel != null) {
+							channel.configureBlocking(false);
+							channel.register(selector, SelectionKey.OP_READ, unique.newDecoder());
+						}
+					}
+					else if (key.isReadable()) {
+						MessageDecoder decoder = (MessageDecoder) key.attachment();
+						if (!decoder.read((SocketChannel) key.channel())) {
+							key.cancel();
+						}
+					}
+				}
+				selector.selectedKeys().clear();
+			}
+			
+			// assert if message has been delivered on this thread
+			Assert.assertEquals(1, received.size());
+			Assert.assertEquals(message, received.get(0));
+			
+			client.join(10000);
+			synchronized (statuses) {
+				Assert.assertEquals(DeliveryStatus.ACCEPTED, statuses.get(0));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			selector.close();
+			
+			// try to free the lock before exiting program
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testCorruptedLockFile() throws Unique4jException, IOException {
+		
+		String filePath = TEMP_DIR + File.separator + APP_ID + ".lock";
+		
+		File file = new File(filePath);
+		
+		// if lock file exists, delete it
+		if (file.exists()) {
+			FileUtils.forceDelete(file);
+		}
+
+		// create a corrupted lock file
+		FileUtils.writeStringToFile(file, "abcdefghi\njklmnop\n\rqrst", Charset.forName("UTF-8"));
+
+		// create instance of Unique
+		Unique4j unique = new Unique4j(APP_ID) {
+			@Override
+			public String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			public void receiveMessage(String message) {
+				// do nothing
+			}
+		};
+
+		// try to obtain lock
+		unique.acquireLock();
+
+		// try to free the lock before exiting program
+		unique.releaseLock();
+		
+	}
+	
+	@Test
+	public void testCustomPortStatic() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false, 8080, PortPolicy.STATIC) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false, 8080, PortPolicy.STATIC) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(message, received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testCustomPortDynamic() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final String message = "ijvnfpp389528$#$@520sdf.213sgv8";
+		
+		Unique4j unique1 = new Unique4j(APP_ID, false, 8080, PortPolicy.DYNAMIC) {
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// to assert on main thread
+				received.add(arg0);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4j(APP_ID, false, 8080, PortPolicy.DYNAMIC) {
+			@Override
+			protected String sendMessage() {
+				// send message
+				return message;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(message, received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testMessagePathAllocation() throws Unique4jException {
+		
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		
+		// allocation counting is only available on some JVMs
+		Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+		
+		final com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+		
+		Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+		allocationBean.setThreadAllocatedMemoryEnabled(true);
+		
+		final byte[] message = "ijvnfpp389528$#$@520sdf.213sgv8".getBytes(Charset.forName("UTF-8"));
+		final int warmup = 20000;
+		final int count = 20000;
+		
+		// allocation measured on the thread serving the session before and after null and payload messages, to assert on main thread
+		final long[] measured = new long[] { -1, -1, -1 };
+		final long[] sessionThread = new long[1];
+		
+		// failures on the server thread, asserted on the main thread
+		final AtomicReference<String> failure = new AtomicReference<String>();
+		
+		Unique4j unique = new Unique4j(APP_ID, false) {
+			
+			// number of messages received so far, only accessed by the session thread
+			private int received;
+			
+			@Override
+			protected String sendMessage() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessage(String arg0) {
+				// never invoked for raw bytes
+				failure.compareAndSet(null, "String message received for raw bytes");
+			}
+			
+			@Override
+			protected void receiveMessage(ByteBuffer arg0) {
+				// a session is served by a single thread
+				long threadId = Thread.currentThread().getId();
+				
+				received++;
+				boolean nullPhase = received > warmup && received <= warmup + count;
+				if (nullPhase ? arg0 != null : arg0 == null || arg0.remaining() != message.length) {
+					failure.compareAndSet(null, "Unexpected message " + received);
+				}
+				
+				if (received == warmup) {
+					sessionThread[0] = threadId;
+					measured[0] = allocationBean.getThreadAllocatedBytes(threadId);
+				}
+				else if (received == warmup + count) {
+					measured[1] = allocationBean.getThreadAllocatedBytes(threadId);
+				}
+				else if (received == warmup + 2 * count) {
+					if (sessionThread[0] != threadId) {
+						failure.compareAndSet(null, "Session served by several threads");
+					}
+					long end = allocationBean.getThreadAllocatedBytes(threadId);
+					
+					// notify that all messages have been received
+					synchronized (measured) {
+						measured[2] = end;
+						measured.notify();
+					}
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		Unique4jConnection connection = new Unique4jConnection(APP_ID);
+		
+		try {
+			// send all messages through one session, null messages measure the bookkeeping of a message alone
+			for (int i = 0; i < warmup + 2 * count; i++) {
+				boolean nullPhase = i >= warmup && i < warmup + count;
+				Assert.assertEquals(DeliveryStatus.ACCEPTED, connection.sendBytes(nullPhase ? null : message));
+			}
+			
+			// wait until all messages are received
+			synchronized (measured) {
+				while (measured[2] == -1 && failure.get() == null) {
+					measured.wait();
+				}
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			connection.close();
+			unique.releaseLock();
+		}
+		
+		// assert if the first instance has received the messages as expected
+		Assert.assertNull(failure.get(), failure.get());
+		
+		long nullBytes;
+		long payloadBytes;
+		synchronized (measured) {
+			nullBytes = measured[1] - measured[0];
+			payloadBytes = measured[2] - measured[1];
+		}
+		
+		// assert that receiving the payload allocates nothing beyond the bookkeeping of a null message
+		Assert.assertTrue("Allocated " + payloadBytes + " bytes, null messages need " + nullBytes,
+				payloadBytes <= nullBytes + nullBytes / 20 + 4096);
+		
+	}
+	
+}
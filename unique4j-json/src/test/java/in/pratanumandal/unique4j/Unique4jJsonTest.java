@@ -0,0 +1,604 @@
+/**
+ * Copyright 2019 Pratanu Mandal
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package in.pratanumandal.unique4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import in.pratanumandal.unique4j.exception.Unique4jException;
+
+public class Unique4jJsonTest {
+	
+	private static final String APP_ID = "in.pratanumandal.unique4j-mlsdvo-20191511-#j.6";
+	
+	@Test
+	public void testUnique4jList() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final List<String> messageList = new ArrayList<String>();
+		messageList.add("ijvnfpp389528$#$@520sdf.213sgv6");
+		messageList.add("ijvnfpp389528$#$@520sdf.213sgv7");
+		messageList.add("ijvnfpp389528$#$@520sdf.213sgv8");
+		messageList.add("ijvnfpp389528$#$@520sdf.213sgv9");
+		
+		Unique4j unique1 = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send null
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageList(List<String> message) {
+				// to assert on main thread
+				received.addAll(message);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send message list
+				return messageList;
+			}
+
+			@Override
+			protected void receiveMessageList(List<String> message) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(messageList, received);
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jListNewline() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<String> received = new ArrayList<String>();
+		
+		final List<String> messageList = new ArrayList<String>();
+		messageList.add("C:\\Users\\Pratanu\nMandal\\Desktop\\rptMrExam.pdf");
+		messageList.add("C:\\Users\\Pratanu Mandal\\Desktop\\nptMrExam.pdf");
+		messageList.add("C:\\Users\\Pratanu Mandal\\Desktop\\'rptMrExam.pdf");
+		messageList.add("C:\\Users\\Pratanu Mandal\\Desktop\\rptMrExam.pdf");
+		
+		Unique4j unique1 = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send null
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageList(List<String> message) {
+				// to assert on main thread
+				received.addAll(message);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send message list
+				return messageList;
+			}
+
+			@Override
+			protected void receiveMessageList(List<String> message) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(messageList, received);
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jListNull() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<Object> received = new ArrayList<Object>();
+		
+		Unique4j unique1 = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send null
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageList(List<String> message) {
+				// to assert on main thread
+				received.add(message);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send null
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageList(List<String> message) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertNull(received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jMap() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final Map<String, String> received = new HashMap<String, String>();
+		
+		final Map<String, String> messageMap = new HashMap<String, String>();
+		messageMap.put("23vvf1", "ijvnfpp389528$#$@520sdf.213sgv6");
+		messageMap.put("23vvf2", "ijvnfpp389528$#$@520sdf.213sgv7");
+		messageMap.put("23vvf3", "ijvnfpp389528$#$@520sdf.213sgv8");
+		messageMap.put("23vvf4", "ijvnfpp389528$#$@520sdf.213sgv9");
+		
+		Unique4j unique1 = new Unique4jMap(APP_ID, false) {
+			@Override
+			protected Map<String, String> sendMessageMap() {
+				// send null
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageMap(Map<String, String> message) {
+				// to assert on main thread
+				received.putAll(message);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4jMap(APP_ID, false) {
+			@Override
+			protected Map<String, String> sendMessageMap() {
+				// send message list
+				return messageMap;
+			}
+
+			@Override
+			protected void receiveMessageMap(Map<String, String> message) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(messageMap, received);
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jMapNewline() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final Map<String, String> received = new HashMap<String, String>();
+		
+		final Map<String, String> messageMap = new HashMap<String, String>();
+		messageMap.put("23vvf1", "C:\\Users\\Pratanu\nMandal\\Desktop\\rptMrExam.pdf");
+		messageMap.put("23vvf2", "C:\\Users\\Pratanu Mandal\\Desktop\\nptMrExam.pdf");
+		messageMap.put("23vvf3", "C:\\Users\\Pratanu Mandal\\Desktop\\'rptMrExam.pdf");
+		messageMap.put("23vvf4", "C:\\Users\\Pratanu Mandal\\Desktop\\rptMrExam.pdf");
+		
+		Unique4j unique1 = new Unique4jMap(APP_ID, false) {
+			@Override
+			protected Map<String, String> sendMessageMap() {
+				// send null
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageMap(Map<String, String> message) {
+				// to assert on main thread
+				received.putAll(message);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4jMap(APP_ID, false) {
+			@Override
+			protected Map<String, String> sendMessageMap() {
+				// send message list
+				return messageMap;
+			}
+
+			@Override
+			protected void receiveMessageMap(Map<String, String> message) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertEquals(messageMap, received);
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jMapNull() throws Unique4jException {
+		
+		final Object lock = new Object();
+		
+		final List<Object> received = new ArrayList<Object>();
+		
+		Unique4j unique1 = new Unique4jMap(APP_ID, false) {
+			@Override
+			protected Map<String, String> sendMessageMap() {
+				// send null
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageMap(Map<String, String> message) {
+				// to assert on main thread
+				received.add(message);
+				
+				// notify that message has been received
+				synchronized (lock) {
+					lock.notify();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		unique1.acquireLock();
+		
+		Unique4j unique2 = new Unique4jMap(APP_ID, false) {
+			@Override
+			protected Map<String, String> sendMessageMap() {
+				// send null
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageMap(Map<String, String> message) {
+				// do nothing
+			}
+		};
+		
+		// try to obtain lock
+		unique2.acquireLock();
+		
+		// wait until message is received
+		if (received.isEmpty()) {
+			synchronized (lock) {
+				try {
+					lock.wait();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+			}
+		}
+		
+		// assert if message is sent correctly
+		Assert.assertNull(received.get(0));
+		
+		// try to free the locks before exiting program
+		unique1.releaseLock();
+		
+		unique2.releaseLock();
+		
+	}
+	
+	@Test
+	public void testUnique4jLauncher() throws Unique4jException {
+		
+		final List<List<String>> received = new ArrayList<List<String>>();
+		
+		final String[] args = { "--open", "C:\\path with \"quotes\"", "", "line1\nline2\ttab", "\u00e9\u4e2d\u0001" };
+		
+		// assert if nothing is forwarded without a first instance
+		Assert.assertFalse(Unique4jLauncher.forward(APP_ID, args));
+		
+		Unique4j unique = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessageList(List<String> arg0) {
+				synchronized (received) {
+					received.add(arg0);
+					received.notifyAll();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		try {
+			// assert if arguments are forwarded in the format of Unique4jList
+			Assert.assertTrue(Unique4jLauncher.forward(APP_ID, args));
+			
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals(Arrays.asList(args), received.get(0));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testUnique4jClientMain() throws Unique4jException {
+		
+		final List<List<String>> received = new ArrayList<List<String>>();
+		
+		// assert if usage is rejected and nothing is forwarded without a first instance
+		Assert.assertEquals(Unique4jClient.EXIT_FAILED, Unique4jClient.forward(new String[0]));
+		Assert.assertEquals(Unique4jClient.EXIT_NOT_RUNNING, Unique4jClient.forward(new String[] { APP_ID, "file.txt" }));
+		
+		Unique4j unique = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send null
+				return null;
+			}
+			
+			@Override
+			protected void receiveMessageList(List<String> arg0) {
+				synchronized (received) {
+					received.add(arg0);
+					received.notifyAll();
+				}
+			}
+		};
+		
+		// try to obtain lock
+		Assert.assertTrue(unique.acquireLock());
+		
+		try {
+			// assert if arguments following APP_ID are forwarded
+			Assert.assertEquals(Unique4jClient.EXIT_DELIVERED, Unique4jClient.forward(new String[] { APP_ID, "--open", "file.txt" }));
+			
+			synchronized (received) {
+				while (received.isEmpty()) {
+					received.wait();
+				}
+				Assert.assertEquals(Arrays.asList("--open", "file.txt"), received.get(0));
+			}
+		} catch (InterruptedException e) {
+			throw new Unique4jException(e);
+		} finally {
+			// try to free the lock before exiting program
+			unique.releaseLock();
+		}
+		
+	}
+	
+	@Test
+	public void testSubsequentAcquireLock() throws Unique4jException {
+		
+		// first instance
+		initializeUnique4j();
+		
+		// second instance
+		Unique4j unique = initializeUnique4j();
+		
+		// release lock for last instance only
+		unique.releaseLock();
+		
+	}
+	
+	private Unique4j initializeUnique4j() throws Unique4jException {
+		
+		Unique4j unique = new Unique4jList(APP_ID, false) {
+			@Override
+			protected List<String> sendMessageList() {
+				// send messages
+				return null;
+			}
+
+			@Override
+			protected void receiveMessageList(List<String> message) {
+				try {
+					// release lock on first instance
+					boolean lockReleased = this.releaseLock();
+					
+					// assert if lock has been released
+					Assert.assertEquals(true, lockReleased);
+				} catch (Unique4jException e) {
+					e.printStackTrace();
+				}
+			}
+		};
+		
+		// try to acquire lock
+		boolean lockAcquired = unique.acquireLock();
+		
+		// failed to acquire lock, first instance had lock
+		// therefore, now first instance has released lock
+		// try to acquire lock again
+		if (!lockAcquired) {
+			lockAcquired = unique.acquireLock();
+		}
+
+		// assert if lock has been acquired
+		Assert.assertEquals(true, lockAcquired);
+		
+		return unique;
+		
+	}
+	
+}